@@ -1,5 +1,6 @@
 package project.ec;
 
+import project.nfa.IndexedNFA;
 import project.nfa.NFA;
 import project.nfa.NFAUtil;
 import project.nfa.State;
@@ -106,19 +107,21 @@ public class ExtraCredit {
         System.out.println(nfa);
 
         System.out.print("NFA Tests:\n");
+        IndexedNFA indexed = new IndexedNFA(nfa);
 
         for (String test : testStrings) {
             System.out.println("\nResults for: " + test);
-            System.out.println(NFAUtil.isValidVerbose(nfa, test));
+            System.out.println(NFAUtil.isValidVerbose(indexed, test));
         }
 
         System.out.println("\n---\nDFA Tests:\n");
         nfa = NFAUtil.convertToDFA(NFAUtil.convertToDFA(nfa));
         System.out.println(nfa);
+        indexed = new IndexedNFA(nfa);
 
         for (String test : testStrings) {
             System.out.println("\nResults for: " + test);
-            System.out.println( NFAUtil.isValidVerbose(nfa, test));
+            System.out.println(NFAUtil.isValidVerbose(indexed, test));
         }
 
         /*System.out.print("\nDFA (Minimized) Tests:\n");
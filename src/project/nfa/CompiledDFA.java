@@ -0,0 +1,568 @@
+package project.nfa;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A DFA compiled down to integer tables. States are numbered from zero and
+ * accepting states carry the id of the token type they recognize.
+ *
+ * Characters that every state treats the same way share an equivalence class,
+ * so the transition table is a small char to class map plus a flat
+ * state by class matrix. The columns before compression are the ASCII chars,
+ * one for every other char, and one for each char outside of ASCII that
+ * labels a transition. Those extra chars are kept sorted, and looked up by
+ * binary search.
+ *
+ * As a DFAMatcher it interprets the tables; DFAClassCompiler turns them into
+ * code instead.
+ */
+public class CompiledDFA implements DFAMatcher {
+
+    /**
+     * Number of characters given their own column before compression.
+     */
+    public static final int ALPHABET_SIZE = 128;
+
+    /**
+     * Successor for a missing transition.
+     */
+    public static final int DEAD_STATE = -1;
+
+    /**
+     * Token id of a non-accepting state.
+     */
+    public static final int NO_TOKEN = -1;
+
+    // Start of the serialized form, "CDFA", and its version
+    private static final int MAGIC = 0x43444641;
+    private static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int startState;
+    private final char[] extraChars;
+    private final int[] classMap;
+    private final int numberOfClasses;
+    private final int[] table;
+    private final int[] accept;
+    private final String[] tokenTypes;
+
+    /**
+     * Create a compiled DFA.
+     *
+     * @param startState      index of the initial state.
+     * @param classMap        class of each column, of length ALPHABET_SIZE + 1.
+     * @param numberOfClasses number of distinct classes.
+     * @param table           successors, indexed by state * numberOfClasses + class.
+     * @param accept          token id per state, or NO_TOKEN.
+     * @param tokenTypes      token type names indexed by token id.
+     */
+    public CompiledDFA(final int startState, final int[] classMap, final int numberOfClasses, final int[] table,
+                       final int[] accept, final String[] tokenTypes) {
+        this(startState, new char[0], classMap, numberOfClasses, table, accept, tokenTypes);
+    }
+
+    /**
+     * Create a compiled DFA with columns for chars outside of ASCII.
+     *
+     * @param startState      index of the initial state.
+     * @param extraChars      the chars beyond ASCII with their own column,
+     *                        sorted.
+     * @param classMap        class of each column, of length ALPHABET_SIZE + 1
+     *                        + extraChars.length.
+     * @param numberOfClasses number of distinct classes.
+     * @param table           successors, indexed by state * numberOfClasses + class.
+     * @param accept          token id per state, or NO_TOKEN.
+     * @param tokenTypes      token type names indexed by token id.
+     */
+    public CompiledDFA(final int startState, final char[] extraChars, final int[] classMap,
+                       final int numberOfClasses, final int[] table, final int[] accept, final String[] tokenTypes) {
+        this.startState = startState;
+        this.extraChars = extraChars;
+        this.classMap = classMap;
+        this.numberOfClasses = numberOfClasses;
+        this.table = table;
+        this.accept = accept;
+        this.tokenTypes = tokenTypes;
+    }
+
+    /**
+     * Build a compiled DFA from dense rows, merging the columns that are equal
+     * in every row into one equivalence class.
+     *
+     * @param startState index of the initial state.
+     * @param rows       successor rows, one per state, of length ALPHABET_SIZE + 1.
+     * @param accept     token id per state, or NO_TOKEN.
+     * @param tokenTypes token type names indexed by token id.
+     * @return the compressed dfa.
+     */
+    public static CompiledDFA fromRows(final int startState, final int[][] rows, final int[] accept,
+                                       final String[] tokenTypes) {
+        return fromRows(startState, new char[0], rows, accept, tokenTypes);
+    }
+
+    /**
+     * Build a compiled DFA from dense rows with columns for chars outside of
+     * ASCII, merging the columns that are equal in every row.
+     *
+     * @param startState index of the initial state.
+     * @param extraChars the chars beyond ASCII with their own column, sorted.
+     * @param rows       successor rows, one per state, of length
+     *                   ALPHABET_SIZE + 1 + extraChars.length.
+     * @param accept     token id per state, or NO_TOKEN.
+     * @param tokenTypes token type names indexed by token id.
+     * @return the compressed dfa.
+     */
+    public static CompiledDFA fromRows(final int startState, final char[] extraChars, final int[][] rows,
+                                       final int[] accept, final String[] tokenTypes) {
+        int[] classMap = new int[ALPHABET_SIZE + 1 + extraChars.length];
+        List<Integer> representatives = new ArrayList<Integer>();
+
+        for (int c = 0; c < classMap.length; c++) {
+            classMap[c] = representatives.size();
+            for (int k = 0; k < representatives.size(); k++) {
+                if (sameColumn(rows, representatives.get(k), c)) {
+                    classMap[c] = k;
+                    break;
+                }
+            }
+            if (classMap[c] == representatives.size()) {
+                representatives.add(c);
+            }
+        }
+
+        int numberOfClasses = representatives.size();
+        int[] table = new int[rows.length * numberOfClasses];
+        for (int state = 0; state < rows.length; state++) {
+            for (int k = 0; k < numberOfClasses; k++) {
+                table[state * numberOfClasses + k] = rows[state][representatives.get(k)];
+            }
+        }
+
+        return new CompiledDFA(startState, extraChars, classMap, numberOfClasses, table, accept, tokenTypes);
+    }
+
+    private static boolean sameColumn(final int[][] rows, final int a, final int b) {
+        for (int[] row : rows) {
+            if (row[a] != row[b]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compile a DFA made of State objects. The token type of an accepting state
+     * is the name of the corresponding final state.
+     *
+     * @param dfa the dfa to compile.
+     * @return the compiled form of the dfa.
+     */
+    public static CompiledDFA compile(final NFA dfa) {
+        if (!dfa.isDFA()) {
+            throw new RuntimeException("Must be DFA");
+        }
+        return compile(numberStates(dfa));
+    }
+
+    /**
+     * Number the states of a DFA breadth first, so the start state is 0.
+     *
+     * @param dfa the dfa.
+     * @return the reachable states, in the order used by compile.
+     */
+    static List<State> numberStates(final NFA dfa) {
+        Set<State> seen = new HashSet<State>();
+        List<State> states = new ArrayList<State>();
+        Deque<State> frontier = new ArrayDeque<State>();
+        seen.add(dfa.getStartState());
+        states.add(dfa.getStartState());
+        frontier.add(dfa.getStartState());
+
+        while (!frontier.isEmpty()) {
+            for (Transition t : frontier.poll().getTransitions()) {
+                State dest = t.getDestinationState();
+                if (seen.add(dest)) {
+                    states.add(dest);
+                    frontier.add(dest);
+                }
+            }
+        }
+
+        return states;
+    }
+
+    /**
+     * Compile numbered DFA states, state i of the result being states[i].
+     */
+    static CompiledDFA compile(final List<State> states) {
+        Map<State, Integer> ids = new HashMap<State, Integer>();
+        for (int i = 0; i < states.size(); i++) {
+            ids.put(states.get(i), i);
+        }
+
+        // The labels beyond ASCII get a column each
+        SortedSet<Character> extraSet = new TreeSet<Character>();
+        for (State state : states) {
+            for (Transition t : state.getTransitions()) {
+                if (!t.getMatchAll() && t.getString().charAt(0) >= ALPHABET_SIZE) {
+                    extraSet.add(t.getString().charAt(0));
+                }
+            }
+        }
+        char[] extraChars = new char[extraSet.size()];
+        int n = 0;
+        for (char c : extraSet) {
+            extraChars[n++] = c;
+        }
+
+        Map<String, Integer> tokenIds = new LinkedHashMap<String, Integer>();
+        int[][] rows = new int[states.size()][];
+        int[] accept = new int[states.size()];
+
+        for (int i = 0; i < states.size(); i++) {
+            State state = states.get(i);
+            int[] row = new int[ALPHABET_SIZE + 1 + extraChars.length];
+            Arrays.fill(row, DEAD_STATE);
+
+            // Match-all transitions first, so that single characters take precedence
+            for (Transition t : state.getTransitions()) {
+                if (t.getMatchAll()) {
+                    Arrays.fill(row, ids.get(t.getDestinationState()));
+                }
+            }
+            for (Transition t : state.getTransitions()) {
+                if (!t.getMatchAll()) {
+                    row[column(extraChars, t.getString().charAt(0))] = ids.get(t.getDestinationState());
+                }
+            }
+            rows[i] = row;
+
+            accept[i] = NO_TOKEN;
+            if (state.isFinal()) {
+                if (!tokenIds.containsKey(state.getName())) {
+                    tokenIds.put(state.getName(), tokenIds.size());
+                }
+                accept[i] = tokenIds.get(state.getName());
+            }
+        }
+
+        return fromRows(0, extraChars, rows, accept, tokenIds.keySet().toArray(new String[0]));
+    }
+
+    /**
+     * @return the column of a char: itself in ASCII, then the column of the
+     *         chars without one, then the extra chars.
+     */
+    static int column(final char[] extraChars, final char c) {
+        if (c < ALPHABET_SIZE) {
+            return c;
+        }
+        int extra = Arrays.binarySearch(extraChars, c);
+        return extra < 0 ? ALPHABET_SIZE : ALPHABET_SIZE + 1 + extra;
+    }
+
+    public int getStartState() {
+        return startState;
+    }
+
+    /**
+     * Follow the transition on a character.
+     *
+     * @param state current state.
+     * @param c     character read.
+     * @return the next state, or DEAD_STATE if there is none.
+     */
+    public int step(final int state, final char c) {
+        return table[state * numberOfClasses + classMap[column(extraChars, c)]];
+    }
+
+    /**
+     * @return the equivalence class of a character.
+     */
+    public int getCharClass(final char c) {
+        return classMap[column(extraChars, c)];
+    }
+
+    /**
+     * Follow the transition on an equivalence class.
+     *
+     * @param state     current state.
+     * @param charClass class of the character read.
+     * @return the next state, or DEAD_STATE if there is none.
+     */
+    public int stepClass(final int state, final int charClass) {
+        return table[state * numberOfClasses + charClass];
+    }
+
+    public int getNumberOfClasses() {
+        return numberOfClasses;
+    }
+
+    /**
+     * Partition the states into equivalence classes.
+     *
+     * @param labels label per state; see DFAMinimizer.partition.
+     * @return the block of each state, or DEAD_STATE.
+     */
+    int[] partition(final int[] labels) {
+        return DFAMinimizer.partition(numberOfStates(), numberOfClasses, table, labels);
+    }
+
+    /**
+     * Create the minimal DFA recognizing the same tokens. States accepting
+     * different token types are kept apart, and states that cannot reach an
+     * accepting state are dropped.
+     *
+     * @return the minimized dfa.
+     */
+    public CompiledDFA minimize() {
+        int[] blocks = partition(accept);
+
+        int numBlocks = 0;
+        for (int block : blocks) {
+            numBlocks = Math.max(numBlocks, block + 1);
+        }
+        int[] representative = new int[numBlocks];
+        Arrays.fill(representative, -1);
+        for (int state = 0; state < blocks.length; state++) {
+            if (blocks[state] != DEAD_STATE && representative[blocks[state]] == -1) {
+                representative[blocks[state]] = state;
+            }
+        }
+
+        if (blocks[startState] == DEAD_STATE) {
+            int[] row = new int[classMap.length];
+            Arrays.fill(row, DEAD_STATE);
+            return fromRows(0, extraChars, new int[][]{row}, new int[]{NO_TOKEN}, tokenTypes);
+        }
+
+        // Renumber the blocks breadth first from the start block
+        int[] ids = new int[numBlocks];
+        Arrays.fill(ids, -1);
+        int[] order = new int[numBlocks];
+        int count = 0;
+        ids[blocks[startState]] = count;
+        order[count++] = blocks[startState];
+        for (int i = 0; i < count; i++) {
+            int rep = representative[order[i]];
+            for (int k = 0; k < numberOfClasses; k++) {
+                int target = table[rep * numberOfClasses + k];
+                if (target != DEAD_STATE && blocks[target] != DEAD_STATE && ids[blocks[target]] == -1) {
+                    ids[blocks[target]] = count;
+                    order[count++] = blocks[target];
+                }
+            }
+        }
+
+        int[][] rows = new int[count][classMap.length];
+        int[] newAccept = new int[count];
+        for (int i = 0; i < count; i++) {
+            int rep = representative[order[i]];
+            for (int c = 0; c < classMap.length; c++) {
+                int target = table[rep * numberOfClasses + classMap[c]];
+                rows[i][c] = target == DEAD_STATE || blocks[target] == DEAD_STATE ? DEAD_STATE : ids[blocks[target]];
+            }
+            newAccept[i] = accept[rep];
+        }
+
+        return fromRows(0, extraChars, rows, newAccept, tokenTypes);
+    }
+
+    /**
+     * Write the tables in a compact binary form, read back by read. All
+     * numbers, extra chars included, are big-endian ints, and token types are
+     * UTF-8 with their length in bytes before them.
+     *
+     * @param out where to write; not closed.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(startState);
+        data.writeInt(numberOfClasses);
+        data.writeInt(numberOfStates());
+        data.writeInt(extraChars.length);
+        for (char c : extraChars) {
+            data.writeInt(c);
+        }
+        for (int charClass : classMap) {
+            data.writeInt(charClass);
+        }
+        for (int target : table) {
+            data.writeInt(target);
+        }
+        for (int token : accept) {
+            data.writeInt(token);
+        }
+        data.writeInt(tokenTypes.length);
+        for (String tokenType : tokenTypes) {
+            byte[] bytes = tokenType.getBytes(UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a dfa written by writeTo, from the position of the buffer on.
+     *
+     * @param in the serialized dfa; the position is moved past it.
+     * @return the dfa.
+     * @throws IllegalArgumentException if the data is not a dfa written by
+     *                                  this version, or is cut short.
+     */
+    public static CompiledDFA read(final ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a compiled DFA");
+            }
+            int startState = in.getInt();
+            int numberOfClasses = in.getInt();
+            int numberOfStates = in.getInt();
+            if (numberOfClasses <= 0 || numberOfStates <= 0 || startState < 0 || startState >= numberOfStates
+                    || (long) numberOfStates * numberOfClasses * 4 > in.remaining()) {
+                throw new IllegalArgumentException("Bad compiled DFA header");
+            }
+
+            int[] extras = readInts(in, count(in, 4));
+            char[] extraChars = new char[extras.length];
+            for (int i = 0; i < extras.length; i++) {
+                if (extras[i] < (i == 0 ? ALPHABET_SIZE : extras[i - 1] + 1) || extras[i] > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("Bad compiled DFA extra char " + extras[i]);
+                }
+                extraChars[i] = (char) extras[i];
+            }
+            int[] classMap = readInts(in, ALPHABET_SIZE + 1 + extraChars.length);
+            int[] table = readInts(in, numberOfStates * numberOfClasses);
+            int[] accept = readInts(in, numberOfStates);
+            // Each name takes its length and then its bytes
+            String[] tokenTypes = new String[count(in, 4)];
+            for (int i = 0; i < tokenTypes.length; i++) {
+                byte[] bytes = new byte[count(in, 1)];
+                in.get(bytes);
+                tokenTypes[i] = new String(bytes, UTF_8);
+            }
+
+            // Every index must be in range, so step never fails on bad data
+            check(classMap, 0, numberOfClasses);
+            check(table, DEAD_STATE, numberOfStates);
+            check(accept, NO_TOKEN, tokenTypes.length);
+            return new CompiledDFA(startState, extraChars, classMap, numberOfClasses, table, accept, tokenTypes);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Compiled DFA cut short", e);
+        } catch (NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Bad compiled DFA", e);
+        }
+    }
+
+    /**
+     * Read a count of items, which must fit in the rest of the buffer.
+     *
+     * @param size the least number of bytes an item takes.
+     */
+    private static int count(final ByteBuffer in, final int size) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * size > in.remaining()) {
+            throw new IllegalArgumentException("Bad compiled DFA count " + count);
+        }
+        return count;
+    }
+
+    private static int[] readInts(final ByteBuffer in, final int length) {
+        int[] values = new int[length];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * length);
+        return values;
+    }
+
+    private static void check(final int[] values, final int min, final int bound) {
+        for (int value : values) {
+            if (value < min || value >= bound) {
+                throw new IllegalArgumentException("Bad compiled DFA entry " + value);
+            }
+        }
+    }
+
+    // The raw tables, for JavaSourceWriter and DFAClassCompiler
+
+    char[] getExtraChars() {
+        return extraChars;
+    }
+
+    int[] getClassMap() {
+        return classMap;
+    }
+
+    int[] getTable() {
+        return table;
+    }
+
+    int[] getAccept() {
+        return accept;
+    }
+
+    public boolean isAccepting(final int state) {
+        return accept[state] != NO_TOKEN;
+    }
+
+    /**
+     * @return the token id recognized by the state, or NO_TOKEN.
+     */
+    public int getTokenId(final int state) {
+        return accept[state];
+    }
+
+    /**
+     * @return the token type recognized by the state, or null.
+     */
+    public String getTokenType(final int state) {
+        return accept[state] == NO_TOKEN ? null : tokenTypes[accept[state]];
+    }
+
+    public String[] getTokenTypes() {
+        return tokenTypes.clone();
+    }
+
+    public int numberOfStates() {
+        return accept.length;
+    }
+
+    public int firstAccept(final CharSequence text, final int from, final int to) {
+        int state = startState;
+        for (int i = from; ; i++) {
+            if (accept[state] != NO_TOKEN) {
+                return i;
+            }
+            if (i == to) {
+                return -1;
+            }
+            state = step(state, text.charAt(i));
+            if (state == DEAD_STATE) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Check if the whole string is accepted.
+     *
+     * @param string string to check.
+     * @return true if the dfa ends in an accepting state.
+     */
+    public boolean matches(final CharSequence string) {
+        int state = startState;
+        for (int i = 0; i < string.length() && state != DEAD_STATE; i++) {
+            state = step(state, string.charAt(i));
+        }
+        return state != DEAD_STATE && isAccepting(state);
+    }
+}
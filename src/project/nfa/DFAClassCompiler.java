@@ -0,0 +1,411 @@
+package project.nfa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a CompiledDFA into a class whose firstAccept is a loop reading one
+ * char at a time, then switching on the state to a switch on the char for
+ * that state, so the JIT can turn the DFA into a specialized loop rather
+ * than table lookups. There is a single charAt call, which the JIT inlines.
+ * Where the next state is hard to predict the switches branch badly, and the
+ * tables of CompiledDFA can be faster.
+ *
+ * The class file is written by hand and defined as a hidden class, so no
+ * library is needed. It has version 49, which the JVM verifies by type
+ * inference, so no stack map frames have to be written.
+ */
+public class DFAClassCompiler {
+
+    /**
+     * Largest firstAccept compiled, in bytes of code; HotSpot does not
+     * JIT-compile larger methods, which would then run slower than the
+     * tables.
+     */
+    public static final int MAX_CODE_SIZE = 8000;
+
+    private static final String CLASS_NAME = "project/nfa/DFAClassCompiler$Compiled";
+
+    // Constant pool tags and access flags
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int METHODREF = 10;
+    private static final int INTERFACE_METHODREF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Opcodes
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD = 0x15;
+    private static final int ISTORE = 0x36;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    // Locals of firstAccept
+    private static final int TO = 3;
+    private static final int I = 4;
+    private static final int C = 5;
+    private static final int STATE = 6;
+
+    private DFAClassCompiler() {
+    }
+
+    /**
+     * @param dfa the dfa.
+     * @return a matcher running the dfa as compiled code, or null if the dfa
+     *         is too large to compile.
+     */
+    public static DFAMatcher compile(final CompiledDFA dfa) {
+        byte[] classFile = classFile(dfa);
+        if (classFile == null) {
+            return null;
+        }
+
+        try {
+            Class<?> type = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+            return (DFAMatcher) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the class file, or null if the code would be too large.
+     */
+    static byte[] classFile(final CompiledDFA dfa) {
+        Pool pool = new Pool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int object = pool.classRef("java/lang/Object");
+        int matcher = pool.classRef(DFAMatcher.class.getName().replace('.', '/'));
+        int objectInit = pool.memberRef(METHODREF, "java/lang/Object", "<init>", "()V");
+        int charAt = pool.memberRef(INTERFACE_METHODREF, "java/lang/CharSequence", "charAt", "(I)C");
+        int codeName = pool.utf8("Code");
+        int init = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("()V");
+        int firstAccept = pool.utf8("firstAccept");
+        int firstAcceptDescriptor = pool.utf8("(Ljava/lang/CharSequence;II)I");
+
+        byte[] code = code(dfa, charAt);
+        if (code == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(pool.count);
+            pool.bytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(object);
+            out.writeShort(1);
+            out.writeShort(matcher);
+            out.writeShort(0);
+
+            // A public constructor calling Object's, and firstAccept
+            out.writeShort(2);
+            method(out, init, initDescriptor, codeName, 1, 1,
+                    new byte[]{(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >>> 8), (byte) objectInit,
+                            (byte) RETURN});
+            method(out, firstAccept, firstAcceptDescriptor, codeName, 2, STATE + 1, code);
+
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void method(final DataOutputStream out, final int name, final int descriptor, final int codeName,
+                               final int maxStack, final int maxLocals, final byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * @return the code of firstAccept, or null if it is larger than
+     *         MAX_CODE_SIZE.
+     */
+    private static byte[] code(final CompiledDFA dfa, final int charAt) {
+        Code code = new Code();
+        Label loop = new Label();
+        Label done = new Label();
+        Label[] enter = new Label[dfa.numberOfStates()];
+        Label[] read = new Label[dfa.numberOfStates()];
+        for (int state = 0; state < enter.length; state++) {
+            enter[state] = new Label();
+            read[state] = dfa.isAccepting(state) ? done : new Label();
+        }
+
+        // i = from; then enter the start state
+        code.op(ILOAD_2);
+        code.op(ISTORE, I);
+        code.jump(GOTO, enter[dfa.getStartState()]);
+
+        // while (i < to) { c = text.charAt(i++); switch (state) ... }
+        code.mark(loop);
+        code.op(ILOAD, I);
+        code.op(ILOAD, TO);
+        code.jump(IF_ICMPGE, done);
+        code.op(ALOAD_1);
+        code.op(ILOAD, I);
+        code.op(INVOKEINTERFACE);
+        code.u2(charAt);
+        code.u1(2);
+        code.u1(0);
+        code.op(ISTORE, C);
+        code.op(IINC, I);
+        code.u1(1);
+        code.op(ILOAD, STATE);
+        code.tableSwitch(done, read);
+
+        for (int state = 0; state < enter.length; state++) {
+            // Entering a state: stop if it accepts, else read on from it
+            code.mark(enter[state]);
+            if (dfa.isAccepting(state)) {
+                code.op(ILOAD, I);
+                code.op(IRETURN);
+                continue;
+            }
+            code.push(state);
+            code.op(ISTORE, STATE);
+            code.jump(GOTO, loop);
+
+            // switch (c), with a case for each ASCII or extra char that does
+            // not go where the other chars beyond ASCII go, and those as the
+            // default
+            code.mark(read[state]);
+            int[] classMap = dfa.getClassMap();
+            char[] extraChars = dfa.getExtraChars();
+            int beyond = dfa.stepClass(state, classMap[CompiledDFA.ALPHABET_SIZE]);
+            Map<Integer, Label> cases = new LinkedHashMap<Integer, Label>();
+            for (int column = 0; column < classMap.length; column++) {
+                int target = dfa.stepClass(state, classMap[column]);
+                if (column != CompiledDFA.ALPHABET_SIZE && target != beyond) {
+                    int c = column < CompiledDFA.ALPHABET_SIZE ? column
+                            : extraChars[column - CompiledDFA.ALPHABET_SIZE - 1];
+                    cases.put(c, target == CompiledDFA.DEAD_STATE ? done : enter[target]);
+                }
+            }
+            code.op(ILOAD, C);
+            code.lookupSwitch(beyond == CompiledDFA.DEAD_STATE ? done : enter[beyond], cases);
+        }
+
+        code.mark(done);
+        code.op(ICONST_M1);
+        code.op(IRETURN);
+        return code.finish();
+    }
+
+    /**
+     * The constant pool, written as entries are added.
+     */
+    private static class Pool {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        int count = 1;
+
+        int utf8(final String s) {
+            try {
+                out.writeByte(UTF8);
+                out.writeUTF(s);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return count++;
+        }
+
+        int classRef(final String name) {
+            return entry(CLASS, utf8(name), -1);
+        }
+
+        int memberRef(final int tag, final String owner, final String name, final String descriptor) {
+            int ownerClass = classRef(owner);
+            int nameAndType = entry(NAME_AND_TYPE, utf8(name), utf8(descriptor));
+            return entry(tag, ownerClass, nameAndType);
+        }
+
+        private int entry(final int tag, final int first, final int second) {
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return count++;
+        }
+    }
+
+    /**
+     * A place in the code that jumps go to.
+     */
+    private static class Label {
+        int position = -1;
+    }
+
+    /**
+     * Code being written, with the jumps to labels that are not placed yet.
+     */
+    private static class Code {
+        private byte[] bytes = new byte[1024];
+        private int length = 0;
+
+        // Jumps as triples of instruction start, offset position and offset size
+        private final List<int[]> jumps = new ArrayList<int[]>();
+        private final List<Label> targets = new ArrayList<Label>();
+
+        void u1(final int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(final int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(final int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void op(final int opcode) {
+            u1(opcode);
+        }
+
+        void op(final int opcode, final int local) {
+            u1(opcode);
+            u1(local);
+        }
+
+        void mark(final Label label) {
+            label.position = length;
+        }
+
+        void jump(final int opcode, final Label label) {
+            int start = length;
+            u1(opcode);
+            offset(start, label, 2);
+        }
+
+        void push(final int value) {
+            if (value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else {
+                u1(SIPUSH);
+                u2(value);
+            }
+        }
+
+        /**
+         * Switch on the values from 0, going to targets[value].
+         */
+        void tableSwitch(final Label otherwise, final Label[] targets) {
+            int start = length;
+            u1(TABLESWITCH);
+            align();
+            offset(start, otherwise, 4);
+            u4(0);
+            u4(targets.length - 1);
+            for (Label target : targets) {
+                offset(start, target, 4);
+            }
+        }
+
+        void lookupSwitch(final Label otherwise, final Map<Integer, Label> cases) {
+            int start = length;
+            u1(LOOKUPSWITCH);
+            align();
+            offset(start, otherwise, 4);
+            u4(cases.size());
+            for (Map.Entry<Integer, Label> c : cases.entrySet()) {
+                u4(c.getKey());
+                offset(start, c.getValue(), 4);
+            }
+        }
+
+        // Switch operands start at a multiple of four in the code
+        private void align() {
+            while (length % 4 != 0) {
+                u1(0);
+            }
+        }
+
+        private void offset(final int start, final Label label, final int size) {
+            jumps.add(new int[]{start, length, size});
+            targets.add(label);
+            for (int i = 0; i < size; i++) {
+                u1(0);
+            }
+        }
+
+        /**
+         * @return the code with every jump filled in, or null if it is
+         *         longer than MAX_CODE_SIZE.
+         */
+        byte[] finish() {
+            if (length > MAX_CODE_SIZE) {
+                return null;
+            }
+            for (int j = 0; j < jumps.size(); j++) {
+                int[] jump = jumps.get(j);
+                int offset = targets.get(j).position - jump[0];
+                if (jump[2] == 2) {
+                    bytes[jump[1]] = (byte) (offset >>> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                } else {
+                    for (int i = 0; i < 4; i++) {
+                        bytes[jump[1] + i] = (byte) (offset >>> (24 - 8 * i));
+                    }
+                }
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
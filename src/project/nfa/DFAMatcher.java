@@ -0,0 +1,20 @@
+package project.nfa;
+
+/**
+ * Runs a DFA over text.
+ */
+public interface DFAMatcher {
+
+    /**
+     * Walk the dfa from its start state over the text from index from, until
+     * it first reaches an accepting state.
+     *
+     * @param text the text.
+     * @param from index of the first char to read.
+     * @param to   index just past the last char to read.
+     * @return the index just past the char that reached an accepting state,
+     *         from itself if the start state accepts, or -1 if no accepting
+     *         state is reached before to or the dfa dies.
+     */
+    int firstAccept(CharSequence text, int from, int to);
+}
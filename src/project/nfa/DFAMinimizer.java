@@ -0,0 +1,213 @@
+package project.nfa;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Hopcroft's partition refinement over a DFA in integer form.
+ *
+ * The DFA may be partial: a missing transition leads to an implicit dead
+ * state. States are first split by label, then blocks are refined against
+ * splitters taken from a work list, always queueing the smaller half of a
+ * split. That keeps the total work at O(n * k * log n) for n states and k
+ * symbols.
+ */
+public class DFAMinimizer {
+
+    private DFAMinimizer() {
+    }
+
+    /**
+     * Partition the states of a DFA into equivalence classes.
+     *
+     * @param numStates  number of states.
+     * @param numSymbols number of input symbols.
+     * @param table      successors, indexed by state * numSymbols + symbol;
+     *                   CompiledDFA.DEAD_STATE for a missing transition.
+     * @param labels     label of each state. States with different labels are
+     *                   never merged; label CompiledDFA.NO_TOKEN marks a
+     *                   non-accepting state.
+     * @return the block of each state, numbered from zero, or
+     *         CompiledDFA.DEAD_STATE for states that cannot reach an accepting
+     *         state.
+     */
+    public static int[] partition(final int numStates, final int numSymbols, final int[] table, final int[] labels) {
+        // The implicit dead state gets the last index
+        final int n = numStates + 1;
+        final int dead = numStates;
+
+        // Inverse transitions in compressed rows: predecessors of t on a are
+        // inverse[inverseStart[t * k + a] .. inverseStart[t * k + a + 1])
+        int[] inverseStart = new int[n * numSymbols + 1];
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                inverseStart[target(table, numSymbols, dead, s, a) * numSymbols + a + 1]++;
+            }
+        }
+        for (int i = 1; i < inverseStart.length; i++) {
+            inverseStart[i] += inverseStart[i - 1];
+        }
+        int[] inverse = new int[n * numSymbols];
+        int[] fill = Arrays.copyOf(inverseStart, inverseStart.length - 1);
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < numSymbols; a++) {
+                inverse[fill[target(table, numSymbols, dead, s, a) * numSymbols + a]++] = s;
+            }
+        }
+
+        // Blocks are contiguous ranges of elements; the marked states of a
+        // block are moved to the front of its range
+        int[] elements = new int[n];
+        int[] position = new int[n];
+        int[] block = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] marked = new int[n];
+        int numBlocks = initialBlocks(n, labels, elements, position, block, first, end);
+
+        // Work list of (block, symbol) splitters, encoded as block * k + symbol
+        boolean[] pending = new boolean[n * numSymbols];
+        int[] work = new int[n * numSymbols];
+        int workSize = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            for (int a = 0; a < numSymbols; a++) {
+                pending[b * numSymbols + a] = true;
+                work[workSize++] = b * numSymbols + a;
+            }
+        }
+
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+
+        while (workSize > 0) {
+            int next = work[--workSize];
+            int splitterBlock = next / numSymbols, a = next % numSymbols;
+            pending[next] = false;
+
+            // Snapshot the splitter, marking can reorder its own range
+            int size = end[splitterBlock] - first[splitterBlock];
+            System.arraycopy(elements, first[splitterBlock], splitter, 0, size);
+
+            int numTouched = 0;
+            for (int i = 0; i < size; i++) {
+                int t = splitter[i];
+                for (int j = inverseStart[t * numSymbols + a]; j < inverseStart[t * numSymbols + a + 1]; j++) {
+                    int s = inverse[j];
+                    int b = block[s];
+                    int boundary = first[b] + marked[b];
+                    if (position[s] < boundary) {
+                        continue;
+                    }
+                    if (marked[b] == 0) {
+                        touched[numTouched++] = b;
+                    }
+                    swap(elements, position, position[s], boundary);
+                    marked[b]++;
+                }
+            }
+
+            for (int i = 0; i < numTouched; i++) {
+                int b = touched[i];
+                int count = marked[b];
+                marked[b] = 0;
+                if (count == end[b] - first[b]) {
+                    continue;
+                }
+
+                // Split off the smaller half as the new block
+                int split = first[b] + count;
+                int newBlock = numBlocks++;
+                if (count <= end[b] - split) {
+                    first[newBlock] = first[b];
+                    end[newBlock] = split;
+                    first[b] = split;
+                } else {
+                    first[newBlock] = split;
+                    end[newBlock] = end[b];
+                    end[b] = split;
+                }
+                for (int p = first[newBlock]; p < end[newBlock]; p++) {
+                    block[elements[p]] = newBlock;
+                }
+
+                for (int c = 0; c < numSymbols; c++) {
+                    if (!pending[newBlock * numSymbols + c]) {
+                        pending[newBlock * numSymbols + c] = true;
+                        work[workSize++] = newBlock * numSymbols + c;
+                    }
+                }
+            }
+        }
+
+        // Renumber the blocks densely, leaving out the dead block
+        int[] blockIds = new int[numBlocks];
+        Arrays.fill(blockIds, -1);
+        blockIds[block[dead]] = CompiledDFA.DEAD_STATE;
+        int[] result = new int[numStates];
+        int nextId = 0;
+        for (int s = 0; s < numStates; s++) {
+            int b = block[s];
+            if (b != block[dead] && blockIds[b] == -1) {
+                blockIds[b] = nextId++;
+            }
+            result[s] = blockIds[b];
+        }
+        return result;
+    }
+
+    private static int target(final int[] table, final int numSymbols, final int dead, final int s, final int a) {
+        if (s == dead) {
+            return dead;
+        }
+        int t = table[s * numSymbols + a];
+        return t == CompiledDFA.DEAD_STATE ? dead : t;
+    }
+
+    /**
+     * Sort the states into one block per label. The dead state joins the
+     * non-accepting block.
+     *
+     * @return the number of blocks.
+     */
+    private static int initialBlocks(final int n, final int[] labels, final int[] elements, final int[] position,
+                                     final int[] block, final int[] first, final int[] end) {
+        Integer[] order = new Integer[n];
+        for (int s = 0; s < n; s++) {
+            order[s] = s;
+        }
+        final int dead = n - 1;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer x, Integer y) {
+                return Integer.compare(label(labels, dead, x), label(labels, dead, y));
+            }
+        });
+
+        int numBlocks = 0;
+        for (int p = 0; p < n; p++) {
+            int s = order[p];
+            if (p == 0 || label(labels, dead, s) != label(labels, dead, order[p - 1])) {
+                if (p > 0) {
+                    end[numBlocks - 1] = p;
+                }
+                first[numBlocks++] = p;
+            }
+            elements[p] = s;
+            position[s] = p;
+            block[s] = numBlocks - 1;
+        }
+        end[numBlocks - 1] = n;
+        return numBlocks;
+    }
+
+    private static int label(final int[] labels, final int dead, final int s) {
+        return s == dead ? CompiledDFA.NO_TOKEN : labels[s];
+    }
+
+    private static void swap(final int[] elements, final int[] position, final int i, final int j) {
+        int a = elements[i], b = elements[j];
+        elements[i] = b;
+        elements[j] = a;
+        position[b] = i;
+        position[a] = j;
+    }
+}
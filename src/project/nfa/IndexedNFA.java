@@ -0,0 +1,246 @@
+package project.nfa;
+
+import java.util.*;
+
+/**
+ * An NFA whose reachable states are numbered from zero, with the transitions
+ * of every state copied into arrays. Sets of states can then be represented
+ * as BitSets instead of collections of State objects.
+ *
+ * The arrays returned by the accessors are shared and must not be modified.
+ */
+public class IndexedNFA {
+
+    private final State[] states;
+    private final int[][] emptyTargets;
+    private final char[][] labels;
+    private final int[][] labelTargets;
+    private final int[][] matchAllTargets;
+    private final BitSet[] closures;
+    private final BitSet finalStates;
+
+    /**
+     * Number the states reachable from the start state of an NFA.
+     *
+     * @param nfa the nfa to index. State 0 is its start state.
+     */
+    public IndexedNFA(final NFA nfa) {
+        List<State> order = new ArrayList<State>();
+        HashMap<State, Integer> ids = new HashMap<State, Integer>();
+        ids.put(nfa.getStartState(), 0);
+        order.add(nfa.getStartState());
+
+        for (int i = 0; i < order.size(); i++) {
+            for (Transition t : order.get(i).getTransitions()) {
+                if (!ids.containsKey(t.getDestinationState())) {
+                    ids.put(t.getDestinationState(), order.size());
+                    order.add(t.getDestinationState());
+                }
+            }
+        }
+
+        int n = order.size();
+        states = order.toArray(new State[n]);
+        emptyTargets = new int[n][];
+        labels = new char[n][];
+        labelTargets = new int[n][];
+        matchAllTargets = new int[n][];
+
+        for (int i = 0; i < n; i++) {
+            List<Transition> empty = new ArrayList<Transition>();
+            List<Transition> single = new ArrayList<Transition>();
+            List<Transition> matchAll = new ArrayList<Transition>();
+            for (Transition t : states[i].getTransitions()) {
+                if (t.isEmptyTransition()) {
+                    empty.add(t);
+                } else if (t.getMatchAll()) {
+                    matchAll.add(t);
+                } else if (t.getString().length() == 1) {
+                    // Longer strings can never equal a single character
+                    single.add(t);
+                }
+            }
+
+            emptyTargets[i] = targets(empty, ids);
+            matchAllTargets[i] = targets(matchAll, ids);
+            labelTargets[i] = targets(single, ids);
+            labels[i] = new char[single.size()];
+            for (int j = 0; j < single.size(); j++) {
+                labels[i][j] = single.get(j).getString().charAt(0);
+            }
+        }
+
+        closures = closures(emptyTargets);
+        finalStates = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            if (states[i].isFinal()) {
+                finalStates.set(i);
+            }
+        }
+    }
+
+    /**
+     * Tarjan's algorithm over the empty transitions, without recursion.
+     * Components are completed in reverse topological order, so the closures
+     * of all the components a component leads to are already known.
+     */
+    private static BitSet[] closures(final int[][] empty) {
+        int n = empty.length;
+        BitSet[] closures = new BitSet[n];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] edge = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] callStack = new int[n];
+        int[] componentStack = new int[n];
+        int callTop = 0, componentTop = 0, counter = 0;
+        Arrays.fill(index, -1);
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            index[root] = low[root] = counter++;
+            edge[root] = 0;
+            callStack[callTop++] = root;
+            componentStack[componentTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int v = callStack[callTop - 1];
+                if (edge[v] < empty[v].length) {
+                    int w = empty[v][edge[v]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        edge[w] = 0;
+                        callStack[callTop++] = w;
+                        componentStack[componentTop++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                callTop--;
+                if (callTop > 0) {
+                    int u = callStack[callTop - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+                if (low[v] != index[v]) {
+                    continue;
+                }
+
+                // v is the root of a component, its members are on top of the stack
+                int bottom = componentTop;
+                do {
+                    bottom--;
+                } while (componentStack[bottom] != v);
+
+                BitSet closure = new BitSet(n);
+                for (int i = bottom; i < componentTop; i++) {
+                    closure.set(componentStack[i]);
+                }
+                for (int i = bottom; i < componentTop; i++) {
+                    for (int w : empty[componentStack[i]]) {
+                        if (!onStack[w]) {
+                            closure.or(closures[w]);
+                        }
+                    }
+                }
+                for (int i = bottom; i < componentTop; i++) {
+                    onStack[componentStack[i]] = false;
+                    closures[componentStack[i]] = closure;
+                }
+                componentTop = bottom;
+            }
+        }
+
+        return closures;
+    }
+
+    private static int[] targets(final List<Transition> transitions, final Map<State, Integer> ids) {
+        int[] targets = new int[transitions.size()];
+        for (int j = 0; j < targets.length; j++) {
+            targets[j] = ids.get(transitions.get(j).getDestinationState());
+        }
+        return targets;
+    }
+
+    /**
+     * @return the number of states.
+     */
+    public int size() {
+        return states.length;
+    }
+
+    public int getStartState() {
+        return 0;
+    }
+
+    public State getState(final int state) {
+        return states[state];
+    }
+
+    public boolean isFinal(final int state) {
+        return states[state].isFinal();
+    }
+
+    /**
+     * @return the final states. The set is shared and must not be modified.
+     */
+    public BitSet getFinalStates() {
+        return finalStates;
+    }
+
+    /**
+     * @return the destinations of the empty transitions of a state.
+     */
+    public int[] getEmptyTargets(final int state) {
+        return emptyTargets[state];
+    }
+
+    /**
+     * @return the characters of the single-character transitions of a state.
+     */
+    public char[] getLabels(final int state) {
+        return labels[state];
+    }
+
+    /**
+     * @return the destinations of the single-character transitions of a
+     *         state, in the order of getLabels.
+     */
+    public int[] getLabelTargets(final int state) {
+        return labelTargets[state];
+    }
+
+    /**
+     * @return the destinations of the match-all transitions of a state.
+     */
+    public int[] getMatchAllTargets(final int state) {
+        return matchAllTargets[state];
+    }
+
+    /**
+     * @return every state within E^* of the given state. The set is shared
+     *         between states and must not be modified.
+     */
+    public BitSet getClosure(final int state) {
+        return closures[state];
+    }
+
+    /**
+     * Add every state within E^* of the given states to the set.
+     *
+     * @param set the states to close; updated in place.
+     * @return the same set.
+     */
+    public BitSet closure(final BitSet set) {
+        BitSet states = (BitSet) set.clone();
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            set.or(closures[s]);
+        }
+        return set;
+    }
+}
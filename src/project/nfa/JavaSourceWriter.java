@@ -0,0 +1,155 @@
+package project.nfa;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a compiled DFA as the source of a Java class, so a scanner can be
+ * compiled with the program instead of from its spec at startup.
+ *
+ * The class has a static dfa() method returning the CompiledDFA, built once
+ * when the class is loaded. The tables are packed into string constants, one
+ * char per entry holding the entry plus one, which keeps the class small and
+ * its static initializer far below the size limit of a method. The source is
+ * plain ASCII.
+ */
+public class JavaSourceWriter {
+
+    // Entries per string constant, so that each stays below the 65535 byte
+    // limit on constants when encoded
+    private static final int CHUNK = 1 << 13;
+
+    private static final int LINE_LENGTH = 100;
+
+    private JavaSourceWriter() {
+    }
+
+    /**
+     * Write the source of a class holding the dfa.
+     *
+     * @param dfa         the dfa.
+     * @param packageName package of the class, or empty for none.
+     * @param className   simple name of the class.
+     * @param comment     the class comment, without leading stars.
+     * @param out         where to write the source; not closed.
+     * @throws IOException              if writing fails.
+     * @throws IllegalArgumentException if the dfa has too many states to pack.
+     */
+    public static void write(final CompiledDFA dfa, final String packageName, final String className,
+                             final String comment, final Writer out) throws IOException {
+        if (dfa.numberOfStates() >= Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many states: " + dfa.numberOfStates());
+        }
+
+        if (packageName.length() > 0) {
+            out.write("package " + packageName + ";\n\n");
+        }
+        out.write("import project.nfa.CompiledDFA;\n\n");
+        out.write("/**\n");
+        for (String line : comment.split("\n")) {
+            out.write(line.length() == 0 ? " *\n" : " * " + line + "\n");
+        }
+        out.write(" *\n");
+        out.write(" * Generated by ScannerGenerator; do not edit.\n");
+        out.write(" */\n");
+        out.write("public final class " + className + " {\n\n");
+
+        out.write("    private static final int START_STATE = " + dfa.getStartState() + ";\n\n");
+        out.write("    private static final int NUMBER_OF_CLASSES = " + dfa.getNumberOfClasses() + ";\n\n");
+        out.write("    private static final String[] TOKEN_TYPES = {\n");
+        for (String tokenType : dfa.getTokenTypes()) {
+            out.write("            " + literal(tokenType) + ",\n");
+        }
+        out.write("    };\n\n");
+
+        out.write("    // Tables with each entry plus one per char\n");
+        writeTable("CLASS_MAP", dfa.getClassMap(), out);
+        writeTable("TABLE", dfa.getTable(), out);
+        writeTable("ACCEPT", dfa.getAccept(), out);
+
+        char[] extraChars = dfa.getExtraChars();
+        if (extraChars.length == 0) {
+            out.write("    private static final CompiledDFA DFA = new CompiledDFA(START_STATE, unpack(CLASS_MAP),\n");
+            out.write("            NUMBER_OF_CLASSES, unpack(TABLE), unpack(ACCEPT), TOKEN_TYPES);\n\n");
+        } else {
+            out.write("    // Chars beyond ASCII with a column of their own\n");
+            out.write("    private static final String EXTRA_CHARS = " + literal(new String(extraChars)) + ";\n\n");
+            out.write("    private static final CompiledDFA DFA = new CompiledDFA(START_STATE, EXTRA_CHARS.toCharArray(),\n");
+            out.write("            unpack(CLASS_MAP), NUMBER_OF_CLASSES, unpack(TABLE), unpack(ACCEPT), TOKEN_TYPES);\n\n");
+        }
+
+        out.write("    private " + className + "() {\n");
+        out.write("    }\n\n");
+
+        out.write("    public static CompiledDFA dfa() {\n");
+        out.write("        return DFA;\n");
+        out.write("    }\n\n");
+
+        out.write("    private static int[] unpack(final String[] chunks) {\n");
+        out.write("        int length = 0;\n");
+        out.write("        for (String chunk : chunks) {\n");
+        out.write("            length += chunk.length();\n");
+        out.write("        }\n");
+        out.write("        int[] values = new int[length];\n");
+        out.write("        int i = 0;\n");
+        out.write("        for (String chunk : chunks) {\n");
+        out.write("            for (int j = 0; j < chunk.length(); j++) {\n");
+        out.write("                values[i++] = chunk.charAt(j) - 1;\n");
+        out.write("            }\n");
+        out.write("        }\n");
+        out.write("        return values;\n");
+        out.write("    }\n");
+        out.write("}\n");
+    }
+
+    private static void writeTable(final String name, final int[] values, final Writer out) throws IOException {
+        out.write("    private static final String[] " + name + " = {\n");
+        for (int start = 0; start < values.length; start += CHUNK) {
+            // One constant per chunk, split over lines joined with +
+            StringBuilder line = new StringBuilder("            \"");
+            for (int i = start; i < Math.min(values.length, start + CHUNK); i++) {
+                String escaped = escape((char) (values[i] + 1));
+                if (line.length() + escaped.length() > LINE_LENGTH) {
+                    out.write(line.append("\" +\n").toString());
+                    line.setLength(0);
+                    line.append("            \"");
+                }
+                line.append(escaped);
+            }
+            out.write(line.append("\",\n").toString());
+        }
+        out.write("    };\n\n");
+    }
+
+    /**
+     * @return a quoted Java string literal.
+     */
+    private static String literal(final String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            sb.append(escape(s.charAt(i)));
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @return the char as it is written in a string literal, with every char
+     *         other than printable ASCII escaped. Unicode escapes are read
+     *         before the rest of the source, so they cannot stand for a line
+     *         break, a quote or a backslash.
+     */
+    private static String escape(final char c) {
+        switch (c) {
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            default:
+                return c >= ' ' && c <= '~' ? String.valueOf(c) : String.format("\\u%04x", (int) c);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package project.nfa;
+
+import java.util.*;
+
+/**
+ * A DFA that is built while it runs. Subset states are created the first
+ * time the input reaches them, and transitions are filled in the first time
+ * they are followed.
+ *
+ * The states live in a cache of bounded size. When the cache is full it is
+ * flushed, and only the state being entered is created again. A DFA that
+ * would have exponentially many states therefore runs in bounded memory, at
+ * the cost of recomputing states after a flush.
+ *
+ * State numbers are only valid until the next flush. The state returned by
+ * step is always valid, so a caller that only keeps the current state is
+ * never affected.
+ *
+ * A LazyDFA is not thread safe. Threads running the same nfa each need their
+ * own, and may share the IndexedNFA.
+ */
+public class LazyDFA implements DFAMatcher {
+
+    /**
+     * Default maximum number of cached states.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static final int UNKNOWN = -2;
+
+    private final IndexedNFA nfa;
+    private final int cacheSize;
+
+    private final HashMap<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+    private final List<BitSet> states = new ArrayList<BitSet>();
+    private final List<int[]> rows = new ArrayList<int[]>();
+    private final List<String> tokenTypes = new ArrayList<String>();
+
+    private int startState = UNKNOWN;
+    private int flushes = 0;
+
+    public LazyDFA(final NFA nfa) {
+        this(new IndexedNFA(nfa), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create a lazy DFA.
+     *
+     * @param nfa       the nfa to determinize.
+     * @param cacheSize maximum number of states kept at once, at least 2.
+     */
+    public LazyDFA(final IndexedNFA nfa, final int cacheSize) {
+        if (cacheSize < 2) {
+            throw new IllegalArgumentException("Cache must hold at least 2 states");
+        }
+        this.nfa = nfa;
+        this.cacheSize = cacheSize;
+    }
+
+    public int getStartState() {
+        if (startState == UNKNOWN) {
+            startState = intern((BitSet) nfa.getClosure(nfa.getStartState()).clone());
+        }
+        return startState;
+    }
+
+    /**
+     * Follow the transition on a character, creating the next state if needed.
+     *
+     * @param state current state.
+     * @param c     character read.
+     * @return the next state, or CompiledDFA.DEAD_STATE if there is none.
+     */
+    public int step(final int state, final char c) {
+        boolean cacheable = c < CompiledDFA.ALPHABET_SIZE;
+        if (cacheable && rows.get(state)[c] != UNKNOWN) {
+            return rows.get(state)[c];
+        }
+
+        BitSet target = move(states.get(state), c);
+        int generation = flushes;
+        int next = target.isEmpty() ? CompiledDFA.DEAD_STATE : intern(target);
+
+        // After a flush the old state is gone, there is nothing to record the edge on
+        if (cacheable && generation == flushes) {
+            rows.get(state)[c] = next;
+        }
+        return next;
+    }
+
+    private BitSet move(final BitSet from, final char c) {
+        BitSet to = new BitSet(nfa.size());
+        for (int s = from.nextSetBit(0); s >= 0; s = from.nextSetBit(s + 1)) {
+            char[] labels = nfa.getLabels(s);
+            int[] targets = nfa.getLabelTargets(s);
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    to.or(nfa.getClosure(targets[i]));
+                }
+            }
+            for (int target : nfa.getMatchAllTargets(s)) {
+                to.or(nfa.getClosure(target));
+            }
+        }
+        return to;
+    }
+
+    private int intern(final BitSet set) {
+        Integer id = ids.get(set);
+        if (id != null) {
+            return id;
+        }
+        if (states.size() >= cacheSize) {
+            flush();
+        }
+
+        id = states.size();
+        ids.put(set, id);
+        states.add(set);
+        int[] row = new int[CompiledDFA.ALPHABET_SIZE];
+        Arrays.fill(row, UNKNOWN);
+        rows.add(row);
+
+        // Named like the final states of convertToDFA
+        String tokenType = null;
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            if (nfa.isFinal(s)) {
+                tokenType = nfa.getState(s).getName();
+            }
+        }
+        tokenTypes.add(tokenType);
+
+        return id;
+    }
+
+    private void flush() {
+        ids.clear();
+        states.clear();
+        rows.clear();
+        tokenTypes.clear();
+        startState = UNKNOWN;
+        flushes++;
+    }
+
+    /**
+     * Determinize the nfa completely, unless it has too many states.
+     *
+     * @param nfa       the nfa.
+     * @param maxStates largest number of states to build.
+     * @return the dfa, or null if it would have more than maxStates states.
+     */
+    public static CompiledDFA compile(final IndexedNFA nfa, final int maxStates) {
+        // One char for each column of the CompiledDFA
+        SortedSet<Character> extraSet = new TreeSet<Character>();
+        for (int s = 0; s < nfa.size(); s++) {
+            for (char label : nfa.getLabels(s)) {
+                if (label >= CompiledDFA.ALPHABET_SIZE) {
+                    extraSet.add(label);
+                }
+            }
+        }
+        char[] extraChars = new char[extraSet.size()];
+        char[] columns = new char[CompiledDFA.ALPHABET_SIZE + 1 + extraChars.length];
+        for (char c = 0; c < CompiledDFA.ALPHABET_SIZE; c++) {
+            columns[c] = c;
+        }
+        int n = 0;
+        for (char c : extraSet) {
+            extraChars[n] = c;
+            columns[CompiledDFA.ALPHABET_SIZE + 1 + n++] = c;
+        }
+        char other = (char) CompiledDFA.ALPHABET_SIZE;
+        while (extraSet.contains(other)) {
+            other++;
+        }
+        columns[CompiledDFA.ALPHABET_SIZE] = other;
+
+        // Large enough that nothing is flushed before the limit is passed
+        LazyDFA lazy = new LazyDFA(nfa, maxStates + 1);
+        List<int[]> rows = new ArrayList<int[]>();
+        for (int state = lazy.getStartState(); state < lazy.numberOfStates(); state++) {
+            int[] row = new int[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                row[column] = lazy.step(state, columns[column]);
+                if (lazy.numberOfStates() > maxStates) {
+                    return null;
+                }
+            }
+            rows.add(row);
+        }
+
+        Map<String, Integer> tokenIds = new LinkedHashMap<String, Integer>();
+        int[] accept = new int[rows.size()];
+        for (int state = 0; state < accept.length; state++) {
+            String tokenType = lazy.getTokenType(state);
+            accept[state] = CompiledDFA.NO_TOKEN;
+            if (tokenType != null) {
+                if (!tokenIds.containsKey(tokenType)) {
+                    tokenIds.put(tokenType, tokenIds.size());
+                }
+                accept[state] = tokenIds.get(tokenType);
+            }
+        }
+        return CompiledDFA.fromRows(lazy.getStartState(), extraChars, rows.toArray(new int[0][]), accept,
+                tokenIds.keySet().toArray(new String[0]));
+    }
+
+    public boolean isAccepting(final int state) {
+        return tokenTypes.get(state) != null;
+    }
+
+    /**
+     * @return the name of a final NFA state in the state, or null.
+     */
+    public String getTokenType(final int state) {
+        return tokenTypes.get(state);
+    }
+
+    /**
+     * @return the number of states currently cached.
+     */
+    public int numberOfStates() {
+        return states.size();
+    }
+
+    /**
+     * @return how many times the cache has been flushed.
+     */
+    public int getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * Check if the whole string is accepted.
+     *
+     * @param string string to check.
+     * @return true if the dfa ends in an accepting state.
+     */
+    public boolean matches(final CharSequence string) {
+        int state = getStartState();
+        for (int i = 0; i < string.length() && state != CompiledDFA.DEAD_STATE; i++) {
+            state = step(state, string.charAt(i));
+        }
+        return state != CompiledDFA.DEAD_STATE && isAccepting(state);
+    }
+
+    /**
+     * Find the longest accepted string starting at an index.
+     *
+     * @param string string to search.
+     * @param start  index where the match must begin.
+     * @return the end index of the longest match, or -1 if there is none.
+     */
+    public int longestMatch(final CharSequence string, final int start) {
+        int state = getStartState();
+        int end = isAccepting(state) ? start : -1;
+        for (int i = start; i < string.length(); i++) {
+            state = step(state, string.charAt(i));
+            if (state == CompiledDFA.DEAD_STATE) {
+                break;
+            }
+            if (isAccepting(state)) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    public int firstAccept(final CharSequence text, final int from, final int to) {
+        int state = getStartState();
+        for (int i = from; ; i++) {
+            if (isAccepting(state)) {
+                return i;
+            }
+            if (i == to) {
+                return -1;
+            }
+            state = step(state, text.charAt(i));
+            if (state == CompiledDFA.DEAD_STATE) {
+                return -1;
+            }
+        }
+    }
+}
@@ -13,78 +13,79 @@ public class NFAUtil {
     private NFAUtil() {
     }
 
+    /**
+     * Convert an NFA to a DFA by subset construction.
+     *
+     * Sets of NFA states are BitSets over the numbering of an IndexedNFA and
+     * are interned in a hash table, so every distinct set is discovered once
+     * and processed once from a work queue.
+     *
+     * @param nfaInit the nfa to convert.
+     * @return an equivalent dfa.
+     */
     public static NFA convertToDFA(final NFA nfaInit) {
+        IndexedNFA nfa = new IndexedNFA(nfaInit);
 
-        List<MetaState> remainingMetaStates = new LinkedList<MetaState>();
+        List<BitSet> metaStates = new ArrayList<BitSet>();
+        HashMap<BitSet, Integer> metaStateIds = new HashMap<BitSet, Integer>();
+        List<Map<String, Integer>> transitionTo = new ArrayList<Map<String, Integer>>();
+        Deque<Integer> remainingMetaStates = new ArrayDeque<Integer>();
 
-        MetaState initialClosure = new MetaState(findClosure(nfaInit.getStartState()));
-        remainingMetaStates.add(initialClosure);
-
-        List<MetaState> foundMetaStates = new LinkedList<MetaState>();
+        BitSet initialClosure = (BitSet) nfa.getClosure(nfa.getStartState()).clone();
+        intern(initialClosure, metaStates, metaStateIds, transitionTo, remainingMetaStates);
 
         while (!remainingMetaStates.isEmpty()) {
             // The meta state for us to analyze
-            MetaState metaState = remainingMetaStates.get(0);
-            foundMetaStates.add(metaState);
-            remainingMetaStates.remove(metaState);
-
-            // Temporary map of transitions to their following e-enclosures
-            HashMap<String, List<State>> transTo = new HashMap<String, List<State>>();
-
-            // Look at each state/transistion
-
-            for (State state : metaState.states) {
-                for (Transition trans : state.getTransitions()) {
-                    // For this trans, place the state in the the transMap
-                    if (!trans.isEmptyTransition()) {
-                        if (!transTo.containsKey(trans.getString())) {
-                            transTo.put(trans.getString(), new LinkedList<State>());
-                        }
-                        transTo.get(trans.getString()).addAll(findClosure(trans.getDestinationState()));
+            int metaState = remainingMetaStates.poll();
+            BitSet states = metaStates.get(metaState);
+
+            // Temporary map of characters to the states they lead to
+            TreeMap<Character, BitSet> transTo = new TreeMap<Character, BitSet>();
+            BitSet matchAll = new BitSet(nfa.size());
+
+            for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                char[] labels = nfa.getLabels(state);
+                int[] targets = nfa.getLabelTargets(state);
+                for (int i = 0; i < labels.length; i++) {
+                    BitSet to = transTo.get(labels[i]);
+                    if (to == null) {
+                        to = new BitSet(nfa.size());
+                        transTo.put(labels[i], to);
                     }
+                    to.set(targets[i]);
                 }
-            }
-
-            /*
-                * Build the appropriate meta-states
-                *
-                * For every meta-state this state links to, perhaps add it to the
-                * lists.
-                */
-            for (Entry<String, List<State>> goToState : transTo.entrySet()) {
-                // Our dummy state, if needed.
-                MetaState possibleState = new MetaState(goToState.getValue());
-
-                // If the desired meta-state is in the list, link to it.
-                if (foundMetaStates.contains(possibleState)) {
-                    metaState.addTransition(goToState.getKey(),
-                            foundMetaStates.get(foundMetaStates.indexOf(possibleState)));
-                } else if (remainingMetaStates.contains(possibleState)) {
-                    metaState.addTransition(goToState.getKey(),
-                            remainingMetaStates.get(remainingMetaStates.indexOf(possibleState)));
+                for (int target : nfa.getMatchAllTargets(state)) {
+                    matchAll.set(target);
                 }
+            }
 
-                // Otherwise, create a new one and link to it!
-                else {
-                    metaState.addTransition(goToState.getKey(), possibleState);
-                    remainingMetaStates.add(possibleState);
-                }
+            // A character also follows every match-all transition
+            for (Entry<Character, BitSet> goToState : transTo.entrySet()) {
+                BitSet to = goToState.getValue();
+                to.or(matchAll);
+                transitionTo.get(metaState).put(String.valueOf(goToState.getKey()),
+                        intern(nfa.closure(to), metaStates, metaStateIds, transitionTo, remainingMetaStates));
+            }
+            if (!matchAll.isEmpty()) {
+                transitionTo.get(metaState).put(Transition.MATCHALL_TOKEN,
+                        intern(nfa.closure(matchAll), metaStates, metaStateIds, transitionTo, remainingMetaStates));
             }
         }
 
         // Build the actual states
-        HashMap<MetaState, State> states = new HashMap<MetaState, State>();
+        List<State> states = new ArrayList<State>();
         int iName = 0;
 
-        // Pass one, build state map
-        for (MetaState metaState : foundMetaStates) {
+        // Pass one, build state list
+        for (int metaState = 0; metaState < metaStates.size(); metaState++) {
             // Is goal?
             boolean isGoal = false;
             String name = null;
-            for (State s : metaState.states) {
-                if (s.isFinal()) {
+            BitSet set = metaStates.get(metaState);
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                if (nfa.isFinal(s)) {
                     isGoal = true;
-                    name = s.getName();
+                    name = nfa.getState(s).getName();
                 }
             }
 
@@ -92,32 +93,46 @@ public class NFAUtil {
             if (name == null) {
                 name = "" + iName++;
             }
-            if (metaState == initialClosure) {
+            if (metaState == 0) {
                 name = "S";
             }
 
-            states.put(metaState, new State(name, isGoal));
+            states.add(new State(name, isGoal));
         }
 
         // Pass two, connect states
-        for (MetaState metaState : foundMetaStates) {
-            for (Entry<String, MetaState> targetState : metaState.transitionTo.entrySet()) {
-                String transToken = targetState.getKey();
-                boolean matchAll = false;
-                if (matchAll = transToken.isEmpty()) {
-                    transToken = "john madden";
-                }
-                Transition t = new Transition(transToken, states.get(targetState.getValue()));
-                if (matchAll) {
-                    t.setMatchAll();
+        for (int metaState = 0; metaState < metaStates.size(); metaState++) {
+            for (Entry<String, Integer> targetState : transitionTo.get(metaState).entrySet()) {
+                State target = states.get(targetState.getValue());
+                if (targetState.getKey().equals(Transition.MATCHALL_TOKEN)) {
+                    states.get(metaState).addTransition(Transition.createDotTransition(target));
+                } else {
+                    states.get(metaState).addTransition(new Transition(targetState.getKey(), target));
                 }
-                states.get(metaState).addTransition(t);
             }
         }
 
+        return new NFA(states.get(0));
+    }
 
-
-        return new NFA(states.get(initialClosure));
+    /**
+     * Look up a set of NFA states, adding it as a new meta-state to be
+     * analyzed if it has not been seen yet.
+     *
+     * @return the id of the meta-state.
+     */
+    private static int intern(final BitSet states, final List<BitSet> metaStates,
+                              final HashMap<BitSet, Integer> metaStateIds,
+                              final List<Map<String, Integer>> transitionTo, final Deque<Integer> remaining) {
+        Integer id = metaStateIds.get(states);
+        if (id == null) {
+            id = metaStates.size();
+            metaStates.add(states);
+            metaStateIds.put(states, id);
+            transitionTo.add(new HashMap<String, Integer>());
+            remaining.add(id);
+        }
+        return id;
     }
 
     /**
@@ -170,6 +185,10 @@ public class NFAUtil {
     /**
      * Minimize a given DFA. This will effect the given DFA.
      *
+     * Equivalent states are found by Hopcroft partition refinement on the
+     * compiled form of the DFA, then each class of states is replaced by a
+     * single new state. States that cannot reach a final state are dropped.
+     *
      * @param dfa the dfa you want to minimize.
      */
     public static void minimizeDFA(NFA dfa) {
@@ -178,126 +197,56 @@ public class NFAUtil {
             throw new RuntimeException("Must be DFA");
         }
 
-        // Standard algorithm using table
-        List<State> states = new LinkedList<State>(getAllReachableStates(dfa.getStartState()));
-        HashMap<Set<State>, Character> tranTable = new HashMap<Set<State>, Character>();
-
-        // Fill taken-up unions
-        for (int j = 0; j < states.size(); j++) {
-            for (int i = 0; i < states.size(); i++) {
-
-                if (j <= i)
-                    continue;
-
-                Set<State> tuple = set(states.get(i), states.get(j));
-                boolean a = states.get(i).isFinal();
-                boolean b = states.get(j).isFinal();
-
-
-                if ((a || b)  && !(a && b)) {
-                    tranTable.put(tuple, 'e');
-                } else {
-                    tranTable.put(tuple, null);
-                }
-            }
+        List<State> states = CompiledDFA.numberStates(dfa);
+        HashMap<State, Integer> ids = new HashMap<State, Integer>();
+        int[] labels = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            ids.put(states.get(i), i);
+            labels[i] = states.get(i).isFinal() ? 0 : CompiledDFA.NO_TOKEN;
         }
 
-        boolean changeOccurred;
-        do {
-            // No changes found yet
-            changeOccurred = false;
-
-            //Comb the table, looking for unmarked unions
-            for (int j = 0; j < states.size(); j++) {
-                for (int i = 0; i < states.size(); i++) {
-
-                    if (j <= i)
-                        continue;
-
-                    Set<State> tuple = set(states.get(i), states.get(j));
-
-                    // Found one that must be looked at
-                    if (tranTable.get(tuple) == null) {
-
-                        //gather symbols
-                        Set<String> trans = new HashSet<String>();
-                        for (State state : tuple) {
-                            for (Transition transition : state.getNonEmptyTransitions()) {
-                                trans.add(transition.getString());
-                            }
-                        }
-
-                        //for each symbol, check if states can be combined
-                        for (String symbol : trans) {
-                            Transition a = states.get(i).getTransByString(symbol);
-                            Transition b = states.get(j).getTransByString(symbol);
-                            // If both transitions exist
-                            if (a != null && b != null) {
-                                //if trans on both states, by symbol, is not blank
-                                if (tranTable.get(set(a.getDestinationState(), b.getDestinationState())) != null) {
-                                    //distinct(bothstates) = symbol
-                                    tranTable.put(tuple, 's');
-                                    changeOccurred = true;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        } while (changeOccurred);
-
-        //Build new combined-states
-
-        HashMap<State, State> oldToNew = new HashMap<State, State>();
-
-        for (Entry<Set<State>, Character> entry : tranTable.entrySet()) {
-            // Found combine-able states
-            if (entry.getValue() == null) {
-                List<State> twoStates = new ArrayList<State>(entry.getKey());
+        int[] blocks = CompiledDFA.compile(states).partition(labels);
 
-                State a = twoStates.get(0);
-                State b = twoStates.get(1);
-
-                // a in map
-                if (oldToNew.containsKey(a)) {
-                    oldToNew.put(b, oldToNew.get(a));
-                }
-                // b in map
-                else if (oldToNew.containsKey(b)) {
-                    oldToNew.put(a, oldToNew.get(b));
-                }
-                // none in map
-                else {
-                    State state = new State(a.isFinal() ? a.getName() : (a.getName() + ", " + b.getName()), a.isFinal());
-                    oldToNew.put(a, state);
-                    oldToNew.put(b, state);
-                }
+        // Build new combined-states
+        HashMap<Integer, State> combined = new HashMap<Integer, State>();
+        List<State> representatives = new LinkedList<State>();
+        for (int i = 0; i < states.size(); i++) {
+            State a = states.get(i);
+            if (blocks[i] == CompiledDFA.DEAD_STATE) {
+                continue;
+            }
+            State state = combined.get(blocks[i]);
+            if (state == null) {
+                combined.put(blocks[i], new State(a.getName(), a.isFinal()));
+                representatives.add(a);
+            } else if (!state.isFinal()) {
+                state.name = state.getName() + ", " + a.getName();
             }
         }
 
-        // move all transitions
-        for (State s : states) {
-            for (Transition transition : s.getTransitions()) {
-                if (oldToNew.containsKey(transition.getDestinationState())) {
-                    transition.setDestinationState(oldToNew.get(transition.getDestinationState()));
+        // Move the transitions of one member of each class to its combined state
+        for (State a : representatives) {
+            State from = combined.get(blocks[ids.get(a)]);
+            for (Transition transition : a.getTransitions()) {
+                State to = combined.get(blocks[ids.get(transition.getDestinationState())]);
+                if (to == null) {
+                    continue;
+                }
+                if (transition.getMatchAll()) {
+                    from.addTransition(Transition.createDotTransition(to));
+                } else {
+                    from.addTransition(new Transition(transition.getString(), to));
                 }
             }
         }
-        // Move the transitions to the new comb states
-        for (Entry<State, State> entry : oldToNew.entrySet()) {
-            entry.getValue().addTransition(entry.getKey().getTransitions().toArray(new Transition[0]));
-        }
 
-        // if the start was combined, make sure to reattach it
-        if (oldToNew.containsKey(dfa.getStartState())) {
-            dfa.setStartState(oldToNew.get(dfa.getStartState()));
+        if (blocks[0] == CompiledDFA.DEAD_STATE) {
+            dfa.setStartState(new State(dfa.getStartState().getName(), false));
+        } else {
+            dfa.setStartState(combined.get(blocks[0]));
         }
     }
 
-    private static <T> Set<T> set(T... stuff) {
-        return new HashSet<T>(Arrays.asList(stuff));
-    }
-
     public static boolean isValid(final NFASegment nfa, final String string) {
         return isValid(new NFA(nfa), string);
     }
@@ -322,134 +271,61 @@ public class NFAUtil {
         }
     }
 
-    public static WalkResult isValidVerbose(final NFA nfa, final String string) {
-
-        WalkResult result = new WalkResult();
-
-        final HashSet<NFAStep> steps = new HashSet<NFAStep>();
-        final HashSet<NFAStep> explored = new HashSet<NFAStep>();
-
-        boolean isValid = false;
-
-        steps.add(new NFAStep(nfa.getStartState(), string));
-
-        while (!(isValid || steps.isEmpty())) {
-            NFAStep step = steps.iterator().next();
-            explored.add(step);
-
-            steps.remove(step);
-            result.transitions++;
-
-            // Check for finality
-            if (step.isFinal()) {
-                isValid = true;
-            }
-
-            for (Transition t : step.state.getTransitions()) {
-                NFAStep s = null;
-                // If empty
-                if (t.isEmptyTransition()) {
-                    s = new NFAStep(t.getDestinationState(), step.string);
-                }
-                // if not empty, and string is not empty
-                else if (!step.string.isEmpty() && t.isValid("" + step.string.charAt(0))) {
-                    s = new NFAStep(t.getDestinationState(), step.string.substring(1));
-                }
-
-                if (s != null && !explored.contains(s)) {
-                    steps.add(s);
-                }
-            }
-        }
-
-        result.isValid = isValid;
-
-        return result;
-    }
-
     /**
-     * Execution step in an NFA walk.
+     * Check if the string is valid in the NFA, reporting how much work it took.
      *
-     * @author toriscope
+     * @param nfa    the nfa to check the string against
+     * @param string string to check for validity
+     * @return the result of the walk.
      */
-    private static class NFAStep {
-        private final State state;
-        private final String string;
-
-        public NFAStep(final State state, final String string) {
-            this.state = state;
-            this.string = string;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (o instanceof NFAStep) {
-                NFAStep p = (NFAStep) o;
-                return p.state == this.state && p.string.equals(this.string);
-            } else {
-                System.err.println("Object is not an instance of NFAStep");
-                return false;
-            }
-        }
-
-        @Override
-        public int hashCode() {
-            return state.hashCode() * string.hashCode();
-        }
-
-        public String toString() {
-            return state.toString() + " " + string;
-        }
-
-        public boolean isFinal() {
-            return string.isEmpty() && state.isFinal();
-        }
+    public static WalkResult isValidVerbose(final NFA nfa, final CharSequence string) {
+        return isValidVerbose(new IndexedNFA(nfa), string);
     }
 
     /**
-     * Single meta-state entry in E-Closure table
+     * Simulate an indexed NFA on a string. The set of active states is
+     * advanced one character at a time, so the walk takes time linear in the
+     * length of the string and never copies it.
+     *
+     * The transitions counter is the number of (state, position) pairs
+     * visited, less one for the start.
      *
-     * @author toriscope
+     * @param nfa    the nfa to check the string against
+     * @param string string to check for validity
+     * @return the result of the walk.
      */
-    private static class MetaState {
-        private final List<State> states;
-        private final HashMap<String, MetaState> transitionTo;
-
-        public MetaState(List<State> states) {
-            this.states = states;
-            transitionTo = new HashMap<String, MetaState>();
-        }
-
-        public void addTransition(String trans, MetaState s) {
-            transitionTo.put(trans, s);
-        }
-
-        @Override
-        public int hashCode() {
-            int ohgeez = 1;
-            for (State s : states) {
-                ohgeez *= s.hashCode();
-            }
-            return ohgeez;
-        }
+    public static WalkResult isValidVerbose(final IndexedNFA nfa, final CharSequence string) {
+        WalkResult result = new WalkResult();
 
-        @Override
-        public boolean equals(final Object o) {
-            if (o instanceof MetaState) {
-                MetaState s = (MetaState) o;
-                if (s.states.size() != this.states.size()) {
-                    return false;
-                }
-                for (State state : s.states) {
-                    if (!this.states.contains(state)) {
-                        return false;
+        BitSet current = (BitSet) nfa.getClosure(nfa.getStartState()).clone();
+        BitSet next = new BitSet(nfa.size());
+        result.transitions += current.cardinality();
+
+        for (int i = 0; i < string.length() && !current.isEmpty(); i++) {
+            char c = string.charAt(i);
+            next.clear();
+            for (int state = current.nextSetBit(0); state >= 0; state = current.nextSetBit(state + 1)) {
+                char[] labels = nfa.getLabels(state);
+                int[] targets = nfa.getLabelTargets(state);
+                for (int j = 0; j < labels.length; j++) {
+                    if (labels[j] == c) {
+                        next.or(nfa.getClosure(targets[j]));
                     }
                 }
-            } else
-                return false;
+                for (int target : nfa.getMatchAllTargets(state)) {
+                    next.or(nfa.getClosure(target));
+                }
+            }
 
-            return true;
+            BitSet swap = current;
+            current = next;
+            next = swap;
+            result.transitions += current.cardinality();
         }
+
+        result.isValid = current.intersects(nfa.getFinalStates());
+
+        return result;
     }
 
     // Create unique names
@@ -0,0 +1,201 @@
+package project.nfa.test;
+
+import org.junit.Test;
+import project.nfa.CompiledDFA;
+import project.nfa.DFAClassCompiler;
+import project.nfa.DFAMatcher;
+import project.nfa.NFA;
+import project.nfa.NFAUtil;
+import project.nfa.State;
+import project.nfa.Transition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static project.nfa.NFAUtil.*;
+
+public class CompiledDFATest {
+
+    @Test
+    public void compileTest() {
+        // a*b(a|b)+
+        NFASegment d = ab(ab(aStar(a("a")), a("b")), aPlus(aOrB(a("a"), a("b"))));
+        d.end.addTransition(Transition.spawnGoal("AB"));
+        NFA n = NFAUtil.convertToDFA(new NFA(d));
+        CompiledDFA dfa = CompiledDFA.compile(n);
+
+        assertEquals(n.numberOfStates(), dfa.numberOfStates());
+        assertTrue("a*b(a|b)+", dfa.matches("aaaaba"));
+        assertTrue("a*b(a|b)+", dfa.matches("bab"));
+        assertFalse("a*b(a|b)+", dfa.matches("aa"));
+        assertFalse("a*b(a|b)+", dfa.matches("b"));
+        assertFalse("a*b(a|b)+", dfa.matches("bac"));
+
+        int state = dfa.getStartState();
+        for (char c : "bb".toCharArray()) {
+            state = dfa.step(state, c);
+        }
+        assertEquals("AB", dfa.getTokenType(state));
+        assertEquals(CompiledDFA.DEAD_STATE, dfa.step(state, 'c'));
+    }
+
+    @Test
+    public void matchAllTest() {
+        State s0 = new State("s0", false);
+        State s1 = new State("DOT", true);
+        State s2 = new State("X", true);
+        s0.addTransition(Transition.createDotTransition(s1), new Transition("x", s2));
+
+        CompiledDFA dfa = CompiledDFA.compile(new NFA(s0));
+
+        assertEquals("X", dfa.getTokenType(dfa.step(dfa.getStartState(), 'x')));
+        assertEquals("DOT", dfa.getTokenType(dfa.step(dfa.getStartState(), 'y')));
+        assertEquals("DOT", dfa.getTokenType(dfa.step(dfa.getStartState(), '\u00e9')));
+        assertFalse(dfa.matches(""));
+        assertFalse(dfa.matches("xx"));
+    }
+
+    @Test
+    public void nonAsciiTest() throws IOException {
+        // Chars beyond ASCII that label transitions are told apart from each other and the rest
+        State s0 = new State("s0", false);
+        State s1 = new State("DOT", true);
+        State s2 = new State("E", true);
+        State s3 = new State("N", true);
+        s0.addTransition(Transition.createDotTransition(s1), new Transition("\u00e9", s2),
+                new Transition("\u00f1", s3));
+        CompiledDFA compiled = CompiledDFA.compile(new NFA(s0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiled.minimize().writeTo(out);
+        for (CompiledDFA dfa : new CompiledDFA[]{compiled, compiled.minimize(),
+                CompiledDFA.read(ByteBuffer.wrap(out.toByteArray()))}) {
+            int start = dfa.getStartState();
+            assertEquals("E", dfa.getTokenType(dfa.step(start, '\u00e9')));
+            assertEquals("N", dfa.getTokenType(dfa.step(start, '\u00f1')));
+            assertEquals("DOT", dfa.getTokenType(dfa.step(start, '\u00e8')));
+            assertEquals("DOT", dfa.getTokenType(dfa.step(start, '\u0080')));
+            assertEquals("DOT", dfa.getTokenType(dfa.step(start, 'y')));
+            assertEquals(3, dfa.getNumberOfClasses());
+        }
+
+        DFAMatcher matcher = DFAClassCompiler.compile(compiled);
+        for (String s : new String[]{"\u00e9", "\u00f1", "\u00e8", "y", ""}) {
+            assertEquals(s, compiled.firstAccept(s, 0, s.length()), matcher.firstAccept(s, 0, s.length()));
+        }
+    }
+
+    @Test
+    public void charClassTest() {
+        // (a|b|c)+x
+        State s0 = new State("s0", false);
+        State s1 = new State("s1", false);
+        State s2 = new State("s2", true);
+        for (String c : new String[]{"a", "b", "c"}) {
+            s0.addTransition(new Transition(c, s1));
+            s1.addTransition(new Transition(c, s1));
+        }
+        s1.addTransition(new Transition("x", s2));
+        CompiledDFA dfa = CompiledDFA.compile(new NFA(s0));
+
+        // {a, b, c}, {x} and everything else
+        assertEquals(3, dfa.getNumberOfClasses());
+        assertEquals(dfa.getCharClass('a'), dfa.getCharClass('c'));
+        assertEquals(dfa.getCharClass('y'), dfa.getCharClass('\u00e9'));
+        assertTrue(dfa.getCharClass('a') != dfa.getCharClass('x'));
+        assertTrue(dfa.matches("cabx"));
+        assertFalse(dfa.matches("cab"));
+        assertFalse(dfa.matches("x"));
+    }
+
+    @Test
+    public void minimizeTest() {
+        // (a|b)*abb, five states before minimization
+        NFASegment d = ab(ab(ab(aStar(aOrB(a("a"), a("b"))), a("a")), a("b")), a("b"));
+        d.end.addTransition(Transition.spawnGoal("ABB"));
+        CompiledDFA dfa = CompiledDFA.compile(NFAUtil.convertToDFA(new NFA(d)));
+        CompiledDFA min = dfa.minimize();
+
+        assertEquals(4, min.numberOfStates());
+        assertEquals(3, min.getNumberOfClasses());
+        for (String s : new String[]{"abb", "aabb", "babababb", "ab", "abba", "", "abbc"}) {
+            assertEquals(s, dfa.matches(s), min.matches(s));
+        }
+    }
+
+    @Test
+    public void minimizeKeepsTokensApartTest() {
+        // INT [0-9]+ and ID [a-z]+ have the same shape but different labels
+        NFASegment digits = aPlus(aOrB(a("0"), a("1"), a("2")));
+        digits.end.name = "INT";
+        digits.end.isFinal = true;
+        NFASegment letters = aPlus(aOrB(a("a"), a("b"), a("c")));
+        letters.end.name = "ID";
+        letters.end.isFinal = true;
+        CompiledDFA min = CompiledDFA.compile(NFAUtil.convertToDFA(new NFA(aOrB(digits, letters)))).minimize();
+
+        // start, INT and ID
+        assertEquals(3, min.numberOfStates());
+        int state = min.getStartState();
+        assertEquals("INT", min.getTokenType(min.step(min.step(state, '0'), '2')));
+        assertEquals("ID", min.getTokenType(min.step(min.step(state, 'a'), 'c')));
+        assertEquals(CompiledDFA.DEAD_STATE, min.step(min.step(state, 'a'), '1'));
+    }
+
+    @Test
+    public void serializeTest() throws IOException {
+        NFASegment digits = aPlus(aOrB(a("0"), a("1"), a("2")));
+        digits.end.name = "INT";
+        digits.end.isFinal = true;
+        NFASegment letters = aPlus(aOrB(a("a"), a("b"), a("c")));
+        letters.end.name = "ID";
+        letters.end.isFinal = true;
+        CompiledDFA dfa = CompiledDFA.compile(NFAUtil.convertToDFA(new NFA(aOrB(digits, letters)))).minimize();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dfa.writeTo(out);
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+        CompiledDFA read = CompiledDFA.read(in);
+
+        assertEquals(0, in.remaining());
+        assertEquals(dfa.numberOfStates(), read.numberOfStates());
+        assertEquals(dfa.getNumberOfClasses(), read.getNumberOfClasses());
+        for (String s : new String[]{"012", "abc", "a1", "", "2", "\u00e9"}) {
+            assertEquals(s, dfa.matches(s), read.matches(s));
+        }
+        int state = read.step(read.getStartState(), 'c');
+        assertEquals("ID", read.getTokenType(state));
+
+        // Cut short
+        try {
+            CompiledDFA.read(ByteBuffer.wrap(out.toByteArray(), 0, out.size() - 1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Huge counts of token types and of the bytes of a name, which must
+        // not be allocated
+        int tokenTypesAt = out.size() - 4;
+        for (String tokenType : dfa.getTokenTypes()) {
+            tokenTypesAt -= 4 + tokenType.length();
+        }
+        for (int at : new int[]{tokenTypesAt, tokenTypesAt + 4}) {
+            for (int count : new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE - 8, 1 << 28, -1}) {
+                ByteBuffer damaged = ByteBuffer.wrap(out.toByteArray());
+                damaged.putInt(at, count);
+                try {
+                    CompiledDFA.read(damaged);
+                    fail(at + " " + count);
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+        }
+    }
+}
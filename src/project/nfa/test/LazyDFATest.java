@@ -0,0 +1,100 @@
+package project.nfa.test;
+
+import org.junit.Test;
+import project.nfa.CompiledDFA;
+import project.nfa.IndexedNFA;
+import project.nfa.LazyDFA;
+import project.nfa.NFA;
+import project.nfa.NFAUtil;
+import project.nfa.Transition;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static project.nfa.NFAUtil.*;
+
+public class LazyDFATest {
+
+    @Test
+    public void matchesTest() {
+        // a*b(a|b)+
+        NFASegment d = ab(ab(aStar(a("a")), a("b")), aPlus(aOrB(a("a"), a("b"))));
+        d.end.addTransition(Transition.spawnGoal("AB"));
+        LazyDFA dfa = new LazyDFA(new NFA(d));
+
+        assertTrue("a*b(a|b)+", dfa.matches("aaaaba"));
+        assertTrue("a*b(a|b)+", dfa.matches("bab"));
+        assertFalse("a*b(a|b)+", dfa.matches("aa"));
+        assertFalse("a*b(a|b)+", dfa.matches("b"));
+        assertFalse("a*b(a|b)+", dfa.matches("bac"));
+        assertEquals(5, dfa.longestMatch("xabbac", 1));
+        assertEquals(-1, dfa.longestMatch("xabbac", 0));
+    }
+
+    @Test
+    public void boundedCacheTest() {
+        // (a|b)*a(a|b)^12 needs more than 2^12 states when determinized
+        NFASegment d = ab(aStar(aOrB(a("a"), a("b"))), a("a"));
+        for (int i = 0; i < 12; i++) {
+            d = ab(d, aOrB(a("a"), a("b")));
+        }
+        d.end.addTransition(Transition.spawnGoal());
+        NFA n = new NFA(d);
+        IndexedNFA indexed = new IndexedNFA(n);
+        LazyDFA dfa = new LazyDFA(indexed, 64);
+
+        Random random = new Random(3240);
+        StringBuilder sb = new StringBuilder();
+        for (int length = 0; length < 400; length++) {
+            String s = sb.toString();
+            assertEquals(s, NFAUtil.isValidVerbose(indexed, s).isValid, dfa.matches(s));
+            assertTrue(dfa.numberOfStates() <= 64);
+            sb.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        assertTrue(dfa.getFlushCount() > 0);
+    }
+
+    @Test
+    public void compileTest() {
+        // .*a(a|b)^n searched with firstAccept, which needs 2^(n+1) states
+        for (int n : new int[]{2, 12}) {
+            NFASegment d = ab(aStar(dot()), a("a"));
+            for (int i = 0; i < n; i++) {
+                d = ab(d, aOrB(a("a"), a("b")));
+            }
+            d.end.isFinal = true;
+            IndexedNFA indexed = new IndexedNFA(new NFA(d));
+            LazyDFA lazy = new LazyDFA(indexed, 64);
+
+            CompiledDFA compiled = LazyDFA.compile(indexed, 1024);
+            if (n == 12) {
+                assertNull(compiled);
+                continue;
+            }
+            assertEquals(8, compiled.minimize().numberOfStates());
+
+            Random random = new Random(n);
+            for (int k = 0; k < 200; k++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(30);
+                for (int i = 0; i < length; i++) {
+                    sb.append("ab\u00e9".charAt(random.nextInt(3)));
+                }
+                String s = sb.toString();
+                for (int from = 0; from <= s.length(); from++) {
+                    assertEquals(s, compiled.firstAccept(s, from, s.length()), lazy.firstAccept(s, from, s.length()));
+                }
+            }
+        }
+
+        // A label beyond ASCII gets a column of its own
+        NFASegment e = ab(aStar(dot()), a("\u00e9"));
+        e.end.isFinal = true;
+        CompiledDFA compiled = LazyDFA.compile(new IndexedNFA(new NFA(e)), 16);
+        assertEquals(2, compiled.firstAccept("a\u00e9", 0, 2));
+        assertEquals(-1, compiled.firstAccept("a\u00e8\u0080", 0, 3));
+    }
+}
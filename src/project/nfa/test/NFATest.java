@@ -1,14 +1,17 @@
 package project.nfa.test;
 
+import project.nfa.IndexedNFA;
 import project.nfa.NFA;
 import project.nfa.NFAUtil;
 import project.nfa.State;
 import project.nfa.Transition;
 import org.junit.Test;
 
+import java.util.BitSet;
 import java.util.List;
 
 import static project.nfa.NFAUtil.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -51,6 +54,22 @@ public class NFATest {
         assertFalse(NFAUtil.isValid(n, "a"));
     }
 
+    @Test
+    public void MatchAllSubsetTest() {
+        // .x|ab, the 'a' of ab is also matched by the dot
+        NFASegment dotX = ab(dot(), a("x"));
+        NFASegment n = aOrB(dotX, ab(a("a"), a("b")));
+        n.end.addTransition(Transition.spawnGoal());
+
+        NFA dfa = NFAUtil.convertToDFA(new NFA(n));
+
+        assertTrue(dfa.isDFA());
+        assertTrue(NFAUtil.isValid(dfa, "ax"));
+        assertTrue(NFAUtil.isValid(dfa, "ab"));
+        assertTrue(NFAUtil.isValid(dfa, "zx"));
+        assertFalse(NFAUtil.isValid(dfa, "zb"));
+    }
+
     @Test
     public void dfaMinimizeTest() {
 
@@ -126,6 +145,52 @@ public class NFATest {
                 && results.contains(c) && results.contains(d) && !results.contains(e));
     }
 
+    @Test
+    public void IndexedClosureTest() {
+        State a = new State("a", false);
+        State b = new State("b", false);
+        State c = new State("c", false);
+        State d = new State("d", false);
+        State e = new State("e", false);
+
+        // a -> b -> c -> a is an empty cycle, c -> d leaves it
+        a.addTransition(new Transition(b));
+        b.addTransition(new Transition(c), new Transition("f", e));
+        c.addTransition(new Transition(a), new Transition(d));
+        d.addTransition(new Transition("f", e));
+
+        IndexedNFA nfa = new IndexedNFA(new NFA(a));
+        assertEquals(5, nfa.size());
+        for (int s = 0; s < nfa.size(); s++) {
+            BitSet closure = nfa.getClosure(s);
+            List<State> expected = NFAUtil.findClosure(nfa.getState(s));
+            assertEquals(nfa.getState(s).getName(), expected.size(), closure.cardinality());
+            for (State x : expected) {
+                boolean found = false;
+                for (int t = closure.nextSetBit(0); t >= 0; t = closure.nextSetBit(t + 1)) {
+                    found |= nfa.getState(t) == x;
+                }
+                assertTrue(nfa.getState(s).getName() + " reaches " + x.getName(), found);
+            }
+        }
+    }
+
+    @Test
+    public void longInputTest() {
+        // (a|b)*abb on strings far too long to walk one suffix at a time
+        NFASegment d = ab(ab(ab(aStar(aOrB(a("a"), a("b"))), a("a")), a("b")), a("b"));
+        d.end.addTransition(Transition.spawnGoal());
+        NFA n = new NFA(d);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append(i % 3 == 0 ? 'a' : 'b');
+        }
+        assertFalse(NFAUtil.isValid(n, sb.toString() + "ab"));
+        assertTrue(NFAUtil.isValid(n, sb.toString() + "abb"));
+        assertTrue(NFAUtil.isValidVerbose(n, sb.append("abb")).isValid);
+    }
+
     @Test
     public void nfaBuilderTest() {
         // (a|b)*
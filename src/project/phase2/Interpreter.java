@@ -3,15 +3,24 @@ package project.phase2;
 import project.phase2.exc.InvalidArgumentException;
 import project.phase2.exc.ParseException;
 import project.phase2.exc.TypeException;
+import project.phase2.file.MatchVisitor;
+import project.phase2.file.RegexCache;
 import project.phase2.file.StringMatchOperations;
 import project.phase2.ll1parsergenerator.ASTNode;
 import project.phase2.structs.StringMatchList;
-import project.scangen.ScannerGenerator;
+import project.scangen.tokenizer.Tokenizer;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class Interpreter {
     private class Variable {
@@ -30,6 +39,14 @@ public class Interpreter {
     private final MiniREParser parser;
     private final Map<String, Variable> varTable;
 
+    // Finds of the current statement run together, and each term's place in them
+    private final Map<ASTNode<String>, ForkJoinTask<List<StringMatchList>>> batchTasks =
+            new IdentityHashMap<ASTNode<String>, ForkJoinTask<List<StringMatchList>>>();
+    private final Map<ASTNode<String>, Integer> batchIndex = new IdentityHashMap<ASTNode<String>, Integer>();
+    // Terms sharing a list with another term of the batch, which get a copy each
+    private final Set<ASTNode<String>> batchShared =
+            Collections.newSetFromMap(new IdentityHashMap<ASTNode<String>, Boolean>());
+
     public Interpreter(MiniREParser parser) {
         this.parser = parser;
         varTable = new HashMap<String, Variable>();
@@ -75,6 +92,13 @@ public class Interpreter {
         String id = statement.get(0).get(0).getValue();
 
         if (statement.get(2).getValue().equals("OCTOTHORPE")) {
+            ASTNode<String> term = singleTerm(statement.get(3));
+            if (term != null) {
+                // Count the matches of a lone find without keeping them
+                varTable.put(id, new Variable(StringMatchOperations.count(termFile(term), termRegex(term))));
+                return;
+            }
+            batchFinds(Collections.singletonList(statement.get(3)));
             Variable var = expression(statement.get(3));
             if (var.val instanceof Integer) {
                 varTable.put(id, var);
@@ -90,15 +114,201 @@ public class Interpreter {
                         id));
             }
         } else {
+            batchFinds(Collections.singletonList(statement.get(2)));
             varTable.put(id, expression(statement.get(2)));
         }
     }
 
+    /**
+     * Print a list of expressions. They are all evaluated concurrently and
+     * printed in order as their values become available. An expression that
+     * is a lone find is not evaluated ahead: its matches are printed as they
+     * are found when its turn comes, so they are never held in memory.
+     */
     private void print(ASTNode<String> exp_list) {
-        System.out.println(expression(exp_list.get(0)));
+        List<ASTNode<String>> terms = new ArrayList<ASTNode<String>>();
+        List<ASTNode<String>> exps = new ArrayList<ASTNode<String>>();
+        List<ForkJoinTask<Variable>> tasks = new ArrayList<ForkJoinTask<Variable>>();
+        while (true) {
+            ASTNode<String> term = singleTerm(exp_list.get(0));
+            terms.add(term);
+            tasks.add(term == null ? new ExpressionTask(exp_list.get(0)) : null);
+            if (term == null) {
+                exps.add(exp_list.get(0));
+            }
+            if (exp_list.getChildren().size() <= 1) {
+                break;
+            }
+            exp_list = exp_list.get(2);
+        }
+
+        batchFinds(exps);
+        List<ForkJoinTask<Variable>> evaluated = new ArrayList<ForkJoinTask<Variable>>();
+        for (ForkJoinTask<Variable> task : tasks) {
+            if (task != null) {
+                evaluated.add(task);
+            }
+        }
+        if (evaluated.size() == tasks.size()) {
+            forkAll(evaluated);
+        } else {
+            // Leave the calling thread free to stream the finds
+            for (ForkJoinTask<Variable> task : evaluated) {
+                task.fork();
+            }
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i) != null) {
+                System.out.println(tasks.get(i).join());
+            } else {
+                TuplePrinter printer = new TuplePrinter(System.out);
+                StringMatchOperations.forEachMatch(termFile(terms.get(i)), termRegex(terms.get(i)), printer);
+                printer.finish();
+            }
+        }
+    }
+
+    /**
+     * Start the finds of a statement. Finds in the same file are run
+     * together, so the file is read and scanned once for all of them; a find
+     * alone in its file is left to evaluate as usual.
+     */
+    private void batchFinds(final List<ASTNode<String>> exps) {
+        batchTasks.clear();
+        batchIndex.clear();
+        batchShared.clear();
+        Map<String, List<ASTNode<String>>> byFile = new LinkedHashMap<String, List<ASTNode<String>>>();
+        for (ASTNode<String> exp : exps) {
+            collectTerms(exp, byFile);
+        }
+
+        for (List<ASTNode<String>> terms : byFile.values()) {
+            if (terms.size() < 2) {
+                continue;
+            }
+            List<String> regexes = new ArrayList<String>();
+            List<String> termRegexes = new ArrayList<String>();
+            for (ASTNode<String> term : terms) {
+                int index = regexes.indexOf(termRegex(term));
+                if (index < 0) {
+                    index = regexes.size();
+                    regexes.add(termRegex(term));
+                }
+                batchIndex.put(term, index);
+                termRegexes.add(termRegex(term));
+            }
+            for (ASTNode<String> term : terms) {
+                if (Collections.frequency(termRegexes, termRegex(term)) > 1) {
+                    batchShared.add(term);
+                }
+            }
+
+            // Errors come out when a term asks for its list, as they would unbatched
+            FindTask task = new FindTask(termFile(terms.get(0)), regexes);
+            task.fork();
+            for (ASTNode<String> term : terms) {
+                batchTasks.put(term, task);
+            }
+        }
+    }
+
+    /**
+     * Find the terms of an expression the way a statement does, batched by
+     * file.
+     *
+     * @return the list of each term, by file and then in source order.
+     */
+    List<StringMatchList> termLists(final ASTNode<String> exp) {
+        Map<String, List<ASTNode<String>>> byFile = new LinkedHashMap<String, List<ASTNode<String>>>();
+        collectTerms(exp, byFile);
+        batchFinds(Collections.singletonList(exp));
+        List<StringMatchList> lists = new ArrayList<StringMatchList>();
+        for (List<ASTNode<String>> terms : byFile.values()) {
+            for (ASTNode<String> term : terms) {
+                lists.add(term(term));
+            }
+        }
+        return lists;
+    }
+
+    private void collectTerms(final ASTNode<String> node, final Map<String, List<ASTNode<String>>> byFile) {
+        if (node.getValue().equals("term")) {
+            String file = termFile(node).getPath();
+            if (!byFile.containsKey(file)) {
+                byFile.put(file, new ArrayList<ASTNode<String>>());
+            }
+            byFile.get(file).add(node);
+            return;
+        }
+        for (ASTNode<String> child : node.getChildren()) {
+            collectTerms(child, byFile);
+        }
+    }
+
+    private static class FindTask extends RecursiveTask<List<StringMatchList>> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final List<String> regexes;
+
+        public FindTask(final File file, final List<String> regexes) {
+            this.file = file;
+            this.regexes = regexes;
+        }
+
+        @Override
+        protected List<StringMatchList> compute() {
+            return StringMatchOperations.find(file, regexes);
+        }
+    }
 
-        if (exp_list.getChildren().size() > 1) {
-            print(exp_list.get(2));
+    /**
+     * @return the term if the expression is a single find, or null.
+     */
+    private ASTNode<String> singleTerm(final ASTNode<String> exp) {
+        ASTNode<String> toke = exp.get(0);
+        if (toke.getValue().equals("term") && exp.get(1).getChildren().size() <= 1) {
+            return toke;
+        }
+        return null;
+    }
+
+    /**
+     * Prints matches in the same form as StringMatchList.toString, one at a
+     * time. Nothing is written until the first match or finish, so a find
+     * that fails prints nothing.
+     */
+    private static class TuplePrinter implements MatchVisitor {
+        private static final int FLUSH_SIZE = 1 << 13;
+
+        private final PrintStream out;
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean started = false;
+
+        public TuplePrinter(final PrintStream out) {
+            this.out = out;
+        }
+
+        public void visit(final String string, final String fileName, final int line, final int startIndex,
+                          final int endIndex) {
+            buffer.append(started ? ", " : "[");
+            started = true;
+            buffer.append('"').append(string).append("\" <\"").append(fileName).append("\", ").append(line)
+                    .append(", ").append(startIndex).append(", ").append(endIndex).append('>');
+            if (buffer.length() >= FLUSH_SIZE) {
+                out.print(buffer);
+                buffer.setLength(0);
+            }
+        }
+
+        public void finish() {
+            if (!started) {
+                buffer.append('[');
+            }
+            buffer.append(']');
+            out.println(buffer);
+            buffer.setLength(0);
         }
     }
 
@@ -110,46 +320,117 @@ public class Interpreter {
         } else if (toke.getValue().equals("OPEN-PAREN")) {
             return expression(toke.get(1));
         } else if (toke.getValue().equals("term")) {
-            StringMatchList res = term(toke);
-            ASTNode<String> exp_tail = exp.get(1);
-            return new Variable(expression_tail(res, exp_tail));
+            return new Variable(expression_tail(toke, exp.get(1)));
         } else {
             throw new RuntimeException();
         }
     }
 
-    private StringMatchList expression_tail(StringMatchList res, ASTNode<String> exp_tail) {
-        if (exp_tail.getChildren().size() == 1) {
-            return res;
+    /**
+     * Evaluate a term followed by a chain of set operations. Every term in the
+     * chain is a find that does not depend on the others, so they are all
+     * evaluated concurrently. The results are then combined from the right,
+     * a op (b op (c ...)), the same way regardless of which find finished first.
+     */
+    private StringMatchList expression_tail(ASTNode<String> term, ASTNode<String> exp_tail) {
+        List<ForkJoinTask<StringMatchList>> terms = new ArrayList<ForkJoinTask<StringMatchList>>();
+        List<String> ops = new ArrayList<String>();
+        terms.add(new TermTask(term));
+        while (exp_tail.getChildren().size() > 1) {
+            ops.add(exp_tail.get(0).get(0).getValue());
+            terms.add(new TermTask(exp_tail.get(1)));
+            exp_tail = exp_tail.get(2);
         }
 
-        StringMatchList stuff = term(exp_tail.get(1));
-        StringMatchList next = expression_tail(stuff, exp_tail.get(2));
-
-        String op = exp_tail.get(0).get(0).getValue();
+        forkAll(terms);
+        StringMatchList next = terms.get(terms.size() - 1).join();
+        for (int i = ops.size() - 1; i >= 0; i--) {
+            StringMatchList res = terms.get(i).join();
+            String op = ops.get(i);
+
+            if (op.equals("DIFF")) {
+                next = res.difference(next);
+            } else if (op.equals("UNION")) {
+                next = res.union(next);
+            } else if (op.equals("INTERS")) {
+                next = res.intersection(next);
+            } else {
+                throw new RuntimeException();
+            }
+        }
+        return next;
+    }
 
-        if (op.equals("DIFF")) {
-            return res.difference(next);
-        } else if (op.equals("UNION")) {
-            return res.union(next);
-        } else if (op.equals("INTERS")) {
-            return res.intersection(next);
+    /**
+     * Start evaluating tasks in the fork-join pool. A single task is run on
+     * the calling thread instead.
+     *
+     * @return the tasks, to be joined in order.
+     */
+    private static <T> List<ForkJoinTask<T>> forkAll(final List<ForkJoinTask<T>> tasks) {
+        if (tasks.size() == 1) {
+            tasks.get(0).invoke();
         } else {
-            throw new RuntimeException();
+            for (ForkJoinTask<T> task : tasks) {
+                task.fork();
+            }
+        }
+        return tasks;
+    }
+
+    private class ExpressionTask extends RecursiveTask<Variable> {
+        private static final long serialVersionUID = 1L;
+
+        private final ASTNode<String> exp;
+
+        public ExpressionTask(ASTNode<String> exp) {
+            this.exp = exp;
+        }
+
+        @Override
+        protected Variable compute() {
+            return expression(exp);
+        }
+    }
+
+    private class TermTask extends RecursiveTask<StringMatchList> {
+        private static final long serialVersionUID = 1L;
+
+        private final ASTNode<String> term;
+
+        public TermTask(ASTNode<String> term) {
+            this.term = term;
+        }
+
+        @Override
+        protected StringMatchList compute() {
+            return term(term);
         }
     }
 
     private StringMatchList term(ASTNode<String> term) {
-        String regex = fromQuotedString(term.get(1).get(0).getValue());
-        String filename = fromQuotedString(term.get(3).get(0).get(0).getValue());
-        return StringMatchOperations.find(new File(filename), regex);
+        ForkJoinTask<List<StringMatchList>> batched = batchTasks.get(term);
+        if (batched != null) {
+            // The expressions of a statement are evaluated in parallel, and may change their lists
+            StringMatchList list = batched.join().get(batchIndex.get(term));
+            return batchShared.contains(term) ? new StringMatchList(list) : list;
+        }
+        return StringMatchOperations.find(termFile(term), termRegex(term));
+    }
+
+    private String termRegex(ASTNode<String> term) {
+        return fromQuotedString(term.get(1).get(0).getValue());
+    }
+
+    private File termFile(ASTNode<String> term) {
+        return new File(fromQuotedString(term.get(3).get(0).get(0).getValue()));
     }
 
     private void replace(ASTNode<String> statement, boolean recursive) {
         String regex = fromQuotedString(statement.get(1).get(0).getValue());
         String replaceText = fromQuotedString(statement.get(3).get(0).getValue());
 
-        if (recursive && Pattern.compile(regex).matcher(replaceText).find()) {
+        if (recursive && RegexCache.compile(regex).matcher(replaceText).find()) {
             throw new InvalidArgumentException(String.format("Replacement text `%s' must not match regex `%s'.",
                     replaceText, regex));
         }
@@ -167,18 +448,15 @@ public class Interpreter {
 
         String programFilePath = args[0];
 
-        ScannerGenerator scannerGenerator = null;
+        MiniREParser parser = null;
 
         try {
-            InputStream specFileInputStream = new ByteArrayInputStream(MiniRESpec.spec.getBytes());
-            InputStream programFileInputStream = new FileInputStream(programFilePath);
-            scannerGenerator = new ScannerGenerator(specFileInputStream, programFileInputStream);
+            parser = new MiniREParser(new Tokenizer(MiniREScanner.dfa(), new FileInputStream(programFilePath)));
         } catch (FileNotFoundException ex) {
             System.err.println(ex);
             System.exit(1);
         }
 
-        MiniREParser parser = new MiniREParser(scannerGenerator);
         Interpreter interpreter = new Interpreter(parser);
 
         try {
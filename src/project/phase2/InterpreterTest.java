@@ -0,0 +1,201 @@
+package project.phase2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import project.phase2.exc.ParseException;
+import project.phase2.file.StringMatchOperations;
+import project.phase2.ll1parsergenerator.ASTNode;
+import project.phase2.structs.StringMatchList;
+import project.scangen.tokenizer.Tokenizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class InterpreterTest {
+
+    private File file;
+    private File other;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("interpreter", ".txt");
+        Writer writer = new FileWriter(file);
+        writer.write("xa ya xb\nyy x\nzx xy y\n");
+        writer.close();
+        other = File.createTempFile("interpreter", ".txt");
+        writer = new FileWriter(other);
+        writer.write("x y\nxy\n");
+        writer.close();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+        other.delete();
+    }
+
+    @Test
+    public void batchedTermsTest() throws ParseException {
+        String[] ops = {"union", "inters", "diff"};
+        for (String first : ops) {
+            for (String second : ops) {
+                String exp = find("x") + " " + first + " " + find("x") + " " + second + " " + find("y");
+
+                // Terms sharing a regex get equal lists, but not the same one
+                ASTNode<String> node = parse("print (" + exp + ");").get(1).get(0).get(2).get(0);
+                List<StringMatchList> lists = new Interpreter(null).termLists(node);
+                assertEquals(3, lists.size());
+                assertNotSame(lists.get(0), lists.get(1));
+                assertEquals(find(file, "x").toString(), lists.get(0).toString());
+                assertEquals(find(file, "x").toString(), lists.get(1).toString());
+                assertEquals(find(file, "y").toString(), lists.get(2).toString());
+
+                StringMatchList expected = apply(find(file, "x"), first,
+                        apply(find(file, "x"), second, find(file, "y")));
+                assertEquals(exp, expected + "\n", run("print (" + exp + ");"));
+            }
+        }
+    }
+
+    @Test
+    public void chainTest() throws ParseException {
+        // Terms in different files, each evaluated on its own, folded from the right
+        String[] ops = {"union", "inters", "diff"};
+        for (String first : ops) {
+            for (String second : ops) {
+                for (String third : ops) {
+                    String exp = find("x", file) + " " + first + " " + find("y", other) + " " + second + " "
+                            + find("[xy]", file) + " " + third + " " + find("x", other);
+                    StringMatchList expected = apply(find(file, "x"), first, apply(find(other, "y"), second,
+                            apply(find(file, "[xy]"), third, find(other, "x"))));
+                    assertEquals(exp, expected + "\n", run("print (" + exp + ");"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void printTest() throws ParseException {
+        String[] items = {
+                find("x", file) + " union " + find("y", other),
+                find("y", file),
+                "n",
+                find("x", other) + " diff " + find("x", file) + " inters " + find("y", file),
+                find("[xy]", other) + " union " + find("x", other)
+        };
+        String assignment = "n = #" + find("x", file) + ";";
+
+        // Printed in order, as when each item is printed on its own
+        StringBuilder statements = new StringBuilder(assignment);
+        StringBuilder list = new StringBuilder();
+        for (String item : items) {
+            statements.append("\nprint (").append(item).append(");");
+            list.append(list.length() == 0 ? "" : ", ").append(item);
+        }
+        String expected = run(statements.toString());
+        assertEquals(items.length, expected.split("\n").length);
+        assertEquals(expected, run(assignment + "\nprint (" + list + ");"));
+
+        // An item that fails stops the print after the items before it
+        String missing = "find 'x' in \"" + new File(file.getPath() + ".missing").getPath() + "\"";
+        String failing = missing + " union " + missing;
+        String before = run(assignment + "\nprint (" + items[0] + ");\nprint (" + items[1] + ");");
+        assertEquals(before, runUntilError(assignment + "\nprint (" + items[0] + ", " + items[1] + ", "
+                + failing + ", " + items[4] + ");"));
+    }
+
+    private String find(final String regex) {
+        return find(regex, file);
+    }
+
+    private static String find(final String regex, final File file) {
+        return "find '" + regex + "' in \"" + file.getPath() + "\"";
+    }
+
+    private static StringMatchList find(final File file, final String regex) {
+        return StringMatchOperations.find(file, regex);
+    }
+
+    private static StringMatchList apply(final StringMatchList a, final String op, final StringMatchList b) {
+        if (op.equals("union")) {
+            return a.union(b);
+        } else if (op.equals("inters")) {
+            return a.intersection(b);
+        }
+        return a.difference(b);
+    }
+
+    private static MiniREParser parser(final String statements) {
+        String program = "begin\n" + statements + "\nend\n";
+        return new MiniREParser(new Tokenizer(MiniREScanner.dfa(), new ByteArrayInputStream(program.getBytes())));
+    }
+
+    /**
+     * @return the minire_program node of a program made of the statements.
+     */
+    private static ASTNode<String> parse(final String statements) throws ParseException {
+        return parser(statements).parse().getRoot().get(0);
+    }
+
+    /**
+     * @return what the statements print.
+     */
+    private static String run(final String statements) throws ParseException {
+        Output output = new Output();
+        try {
+            new Interpreter(parser(statements)).interpret();
+        } finally {
+            output.close();
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return what the statements print before one of them throws.
+     */
+    private static String runUntilError(final String statements) throws ParseException {
+        Output output = new Output();
+        try {
+            new Interpreter(parser(statements)).interpret();
+            fail("no error");
+        } catch (RuntimeException e) {
+            // expected
+        } finally {
+            output.close();
+        }
+        return output.toString();
+    }
+
+    /**
+     * Captures System.out until closed.
+     */
+    private static class Output {
+        private final PrintStream saved = System.out;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Output() {
+            System.setOut(new PrintStream(bytes, true));
+        }
+
+        void close() {
+            System.out.flush();
+            System.setOut(saved);
+        }
+
+        @Override
+        public String toString() {
+            return bytes.toString().replace(System.getProperty("line.separator"), "\n");
+        }
+    }
+}
@@ -5,6 +5,7 @@ import project.phase2.ll1parsergenerator.AST;
 import project.phase2.ll1parsergenerator.ASTNode;
 import project.scangen.ScannerGenerator;
 import project.scangen.tokenizer.Token;
+import project.scangen.tokenizer.Tokenizer;
 
 import java.util.*;
 
@@ -19,9 +20,20 @@ public class MiniREParser {
     }};
 
     private final ScannerGenerator scangen;
+    private final Tokenizer tokenizer;
 
     public MiniREParser(final ScannerGenerator scangen) {
         this.scangen = scangen;
+        this.tokenizer = null;
+    }
+
+    /**
+     * @param tokenizer the tokens of the program, as from
+     *                  MiniREScanner.dfa().
+     */
+    public MiniREParser(final Tokenizer tokenizer) {
+        this.scangen = null;
+        this.tokenizer = tokenizer;
     }
 
     /**
@@ -39,7 +51,7 @@ public class MiniREParser {
         nodeStack = new Stack<ASTNode<String>>();
         nodeStack.push(ast.getRoot());
 
-        tokenIterator = scangen.generateTokenizer().iterator();
+        tokenIterator = (tokenizer != null ? tokenizer : scangen.generateTokenizer()).iterator();
 
         nextsym();
         minire_program();
@@ -0,0 +1,93 @@
+package project.phase2;
+
+import project.nfa.CompiledDFA;
+
+/**
+ * Scanner tables for MiniRESpec.spec, generated by MiniRESpec.main.
+ *
+ * Generated by ScannerGenerator; do not edit.
+ */
+public final class MiniREScanner {
+
+    private static final int START_STATE = 0;
+
+    private static final int NUMBER_OF_CLASSES = 15;
+
+    private static final String[] TOKEN_TYPES = {
+            "ID-OR-KEYWORD",
+            "CLOSE-PAREN",
+            "SEMICOLON",
+            "EQUALS",
+            "OCTOTHORPE",
+            "OPEN-PAREN",
+            "COMMA",
+            "ASCII-STRING",
+            "GREATER-BANG",
+            "REGEX",
+    };
+
+    // Tables with each entry plus one per char
+    private static final String[] CLASS_MAP = {
+            "\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001" +
+            "\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001" +
+            "\u0001\u0001\u0001\u0001\u0002\u0003\u0004\u0005\u0002\u0002\u0002\u0006\u0007\u0008" +
+            "\u0002\u0002\u0009\u0002\u0002\u0002\n\n\n\n\n\n\n\n\n\n\u0002\u000b\u0002\u000c\r" +
+            "\u0002\u0002\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e" +
+            "\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e" +
+            "\u0002\u000f\u0002\u0002\n\u0002\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e" +
+            "\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e\u000e" +
+            "\u000e\u000e\u000e\u0002\u0002\u0002\u0002\u0001\u0001",
+    };
+
+    private static final String[] TABLE = {
+            "\u0000\u0000\u0000\u0002\u0003\u0004\u0005\u0006\u0007\u0000\u0008\u0009\n\u000b\u0000" +
+            "\u0000\u0002\u0002\u000c\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\r" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0004\u0004\u0004\u0004\u000e\u0004\u0004\u0004\u0004\u0004\u0004\u0004" +
+            "\u0004\u000f\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0010\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u000b\u0000\u0000\u0000\u000b\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0002\u0002\u0011" +
+            "\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\r\u0000\u0000\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0004\u0004" +
+            "\u0004\u0004\u0012\u0004\u0004\u0004\u0004\u0004\u0004\u0004\u0004\u000f\u0000\u0000" +
+            "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\u0002\u0002\u000c\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\u0002\r\u0000" +
+            "\u0004\u0004\u0004\u0004\u000e\u0004\u0004\u0004\u0004\u0004\u0004\u0004\u0004\u000f",
+    };
+
+    private static final String[] ACCEPT = {
+            "\u0000\u0000\u0005\u0000\u0006\u0002\u0007\u0003\u0004\u0000\u0001\u0008\u0000\n\u0000" +
+            "\u0009\u0008\n",
+    };
+
+    private static final CompiledDFA DFA = new CompiledDFA(START_STATE, unpack(CLASS_MAP),
+            NUMBER_OF_CLASSES, unpack(TABLE), unpack(ACCEPT), TOKEN_TYPES);
+
+    private MiniREScanner() {
+    }
+
+    public static CompiledDFA dfa() {
+        return DFA;
+    }
+
+    private static int[] unpack(final String[] chunks) {
+        int length = 0;
+        for (String chunk : chunks) {
+            length += chunk.length();
+        }
+        int[] values = new int[length];
+        int i = 0;
+        for (String chunk : chunks) {
+            for (int j = 0; j < chunk.length(); j++) {
+                values[i++] = chunk.charAt(j) - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,30 @@
+package project.phase2;
+
+import org.junit.Test;
+import project.nfa.CompiledDFA;
+import project.scangen.ScannerGenerator;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class MiniREScannerTest {
+
+    @Test
+    public void upToDateTest() {
+        // Fails when MiniRESpec changes; regenerate MiniREScanner with MiniRESpec.main
+        CompiledDFA expected = new ScannerGenerator(new ByteArrayInputStream(MiniRESpec.spec.getBytes()), null)
+                .generateDFA();
+        CompiledDFA dfa = MiniREScanner.dfa();
+
+        assertEquals(expected.numberOfStates(), dfa.numberOfStates());
+        assertEquals(expected.getNumberOfClasses(), dfa.getNumberOfClasses());
+        assertEquals(expected.getStartState(), dfa.getStartState());
+        for (int state = 0; state < dfa.numberOfStates(); state++) {
+            assertEquals(expected.getTokenType(state), dfa.getTokenType(state));
+            for (char c = 0; c <= CompiledDFA.ALPHABET_SIZE; c++) {
+                assertEquals(state + " " + (int) c, expected.step(state, c), dfa.step(state, c));
+            }
+        }
+    }
+}
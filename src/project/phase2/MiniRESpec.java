@@ -1,5 +1,18 @@
 package project.phase2;
 
+import project.scangen.ScannerGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * The tokens of MiniRE. The interpreter scans with MiniREScanner, generated
+ * from this spec by main; run it again after changing the spec:
+ *
+ *     java project.phase2.MiniRESpec > src/project/phase2/MiniREScanner.java
+ */
 public class MiniRESpec {
     public static final String spec =
             "$LETTER [a-zA-Z]\n" +
@@ -18,4 +31,12 @@ public class MiniRESpec {
             "$ID-OR-KEYWORD $LETTER ($LETTER|$DIGIT|_)*\n" +
             "$ASCII-STRING \" ($NO-DOUBLE-QUOTE-ASCII|\\\\\")* \"\n" +
             "$REGEX ' ($NO-SINGLE-QUOTE-ASCII|\\\\')* '";
+
+    public static void main(String[] args) throws IOException {
+        ScannerGenerator scannerGenerator = new ScannerGenerator(new ByteArrayInputStream(spec.getBytes()), null);
+        Writer out = new OutputStreamWriter(System.out);
+        scannerGenerator.generateSource(MiniRESpec.class.getPackage().getName() + ".MiniREScanner",
+                "Scanner tables for MiniRESpec.spec, generated by MiniRESpec.main.", out);
+        out.flush();
+    }
 }
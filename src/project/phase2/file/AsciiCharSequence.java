@@ -0,0 +1,96 @@
+package project.phase2.file;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A CharSequence view of ASCII bytes, one char per byte, without copying.
+ */
+public class AsciiCharSequence implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param bytes  buffer holding the characters; only read with absolute gets.
+     * @param offset index of the first character in the buffer.
+     * @param length number of characters.
+     */
+    public AsciiCharSequence(final ByteBuffer bytes, final int offset, final int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (bytes.get(offset + index) & 0xff);
+    }
+
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new AsciiCharSequence(bytes, offset + start, end - start);
+    }
+
+    /**
+     * Find ASCII bytes in the sequence. Candidates for the first byte are
+     * looked for eight bytes at a time.
+     *
+     * @return the first index at or after from where the bytes occur, or -1.
+     */
+    int indexOf(final byte[] literal, final int from) {
+        int last = length - literal.length;
+        long pattern = (literal[0] & 0xffL) * 0x0101010101010101L;
+        int i = Math.max(0, from);
+        while (i <= last) {
+            if (i + 8 <= length) {
+                // Mark the bytes equal to the first one; the lowest mark is exact
+                long word = Long.reverseBytes(bytes.getLong(offset + i)) ^ pattern;
+                long marks = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+                if (marks == 0) {
+                    i += 8;
+                    continue;
+                }
+                i += Long.numberOfTrailingZeros(marks) >>> 3;
+                if (i > last) {
+                    break;
+                }
+            } else if (bytes.get(offset + i) != literal[0]) {
+                i++;
+                continue;
+            }
+
+            if (startsAt(literal, i)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private boolean startsAt(final byte[] literal, final int at) {
+        for (int j = 1; j < literal.length; j++) {
+            if (bytes.get(offset + at + j) != literal[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes.get(offset + i) & 0xff);
+        }
+        return new String(chars);
+    }
+}
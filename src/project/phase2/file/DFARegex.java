@@ -0,0 +1,510 @@
+package project.phase2.file;
+
+import project.nfa.CompiledDFA;
+import project.nfa.DFAClassCompiler;
+import project.nfa.DFAMatcher;
+import project.nfa.IndexedNFA;
+import project.nfa.LazyDFA;
+import project.nfa.NFA;
+import project.nfa.NFAUtil;
+import project.nfa.NFAUtil.NFASegment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the matches of a find regex with a DFA instead of java.util.regex,
+ * for the regexes where both give the same matches.
+ *
+ * Those are the regexes all of whose matches have the same length, over ASCII
+ * text: literals, escapes, positive classes, groups, alternatives of equal
+ * length and {n}. For them the leftmost match is the one that ends first, so
+ * the minimal DFA of .*regex, which accepts just past the end of each match,
+ * finds the matches in one pass over the text.
+ *
+ * That DFA can have exponentially many states, as for a[ab]{20}. It is only
+ * built when it has at most MAX_STATES states; otherwise the regex runs on a
+ * LazyDFA per thread, in bounded memory.
+ *
+ * This is an optional backend, chosen with the minire.dfa system property:
+ * "table" runs the DFA tables, "bytecode" compiles each DFA into a class
+ * with DFAClassCompiler. Without it every regex runs on java.util.regex.
+ */
+public class DFARegex {
+
+    /**
+     * System property choosing the backend.
+     */
+    public static final String BACKEND_PROPERTY = "minire.dfa";
+
+    /**
+     * Longest regex match handled, in chars.
+     */
+    public static final int MAX_LENGTH = 64;
+
+    /**
+     * Most states of a DFA built in full.
+     */
+    public static final int MAX_STATES = 2048;
+
+    private static final String BACKEND = System.getProperty(BACKEND_PROPERTY, "");
+
+    private static final DFARegex NONE = new DFARegex(null, 0);
+
+    // Most recently used regexes, with NONE for those not handled
+    private static final Map<String, DFARegex> cache = new LinkedHashMap<String, DFARegex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, DFARegex> eldest) {
+            return size() > RegexCache.MAX_SIZE;
+        }
+    };
+
+    private final DFAMatcher matcher;
+    private final int length;
+
+    private DFARegex(final DFAMatcher matcher, final int length) {
+        this.matcher = matcher;
+        this.length = length;
+    }
+
+    /**
+     * @param regex a find regex.
+     * @return the DFA of the regex from the backend chosen by
+     *         BACKEND_PROPERTY, or null if there is none or the regex is not
+     *         handled.
+     */
+    public static DFARegex forRegex(final String regex) {
+        boolean bytecode = BACKEND.equals("bytecode");
+        if (!bytecode && !BACKEND.equals("table")) {
+            return null;
+        }
+
+        DFARegex dfa;
+        synchronized (cache) {
+            dfa = cache.get(regex);
+        }
+        if (dfa == null) {
+            // Built outside of the lock; a racing duplicate is harmless
+            dfa = compile(regex, bytecode);
+            synchronized (cache) {
+                cache.put(regex, dfa == null ? NONE : dfa);
+            }
+        }
+        return dfa == NONE ? null : dfa;
+    }
+
+    /**
+     * Build the DFA of a regex, whatever the backend property says.
+     *
+     * @param regex    a find regex.
+     * @param bytecode true to compile the DFA into a class, false to run its
+     *                 tables.
+     * @return the DFA, or null if the regex is not handled.
+     */
+    public static DFARegex compile(final String regex, final boolean bytecode) {
+        Node node;
+        try {
+            Parser parser = new Parser(regex);
+            node = parser.alternation();
+            if (parser.pos != regex.length()) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            // Not understood, or cut short
+            return null;
+        }
+        int length = node.length();
+        if (length <= 0 || length > MAX_LENGTH) {
+            return null;
+        }
+
+        // .*regex
+        NFASegment any = NFAUtil.aStar(NFAUtil.dot());
+        NFASegment search = NFAUtil.ab(any, node.build());
+        search.end.isFinal = true;
+        IndexedNFA nfa = new IndexedNFA(new NFA(search));
+        CompiledDFA dfa = LazyDFA.compile(nfa, MAX_STATES);
+        if (dfa == null) {
+            return new DFARegex(new LazyMatcher(nfa), length);
+        }
+        dfa = dfa.minimize();
+
+        DFAMatcher matcher = bytecode ? DFAClassCompiler.compile(dfa) : null;
+        return new DFARegex(matcher == null ? dfa : matcher, length);
+    }
+
+    /**
+     * @return true if the regex runs on a DFA built in full.
+     */
+    boolean isComplete() {
+        return !(matcher instanceof LazyMatcher);
+    }
+
+    /**
+     * @return the length of every match.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the index just past the first match that starts at or after
+     *         from, or -1 if there is none.
+     */
+    public int findEnd(final CharSequence text, final int from) {
+        return matcher.firstAccept(text, from, text.length());
+    }
+
+    /**
+     * @return the index just past the first match that starts at or after
+     *         from and ends at or before to, or -1 if there is none.
+     */
+    public int findEnd(final CharSequence text, final int from, final int to) {
+        return matcher.firstAccept(text, from, to);
+    }
+
+    /**
+     * Runs a LazyDFA of its own on each thread, since they are not thread
+     * safe.
+     */
+    private static class LazyMatcher implements DFAMatcher {
+        private final ThreadLocal<LazyDFA> dfas;
+
+        LazyMatcher(final IndexedNFA nfa) {
+            dfas = new ThreadLocal<LazyDFA>() {
+                @Override
+                protected LazyDFA initialValue() {
+                    return new LazyDFA(nfa, LazyDFA.DEFAULT_CACHE_SIZE);
+                }
+            };
+        }
+
+        public int firstAccept(final CharSequence text, final int from, final int to) {
+            return dfas.get().firstAccept(text, from, to);
+        }
+    }
+
+    /**
+     * A regex as a tree, which builds a new NFA each time it is asked, so a
+     * repeated part gets its own states for every repetition.
+     */
+    private abstract static class Node {
+        /**
+         * @return the length of every match, or -1 if it varies.
+         */
+        abstract int length();
+
+        abstract NFASegment build();
+    }
+
+    private static class Chars extends Node {
+        final boolean[] set = new boolean[CompiledDFA.ALPHABET_SIZE];
+
+        int length() {
+            return 1;
+        }
+
+        NFASegment build() {
+            List<NFASegment> choices = new ArrayList<NFASegment>();
+            for (char c = 0; c < set.length; c++) {
+                if (set[c]) {
+                    choices.add(NFAUtil.a(String.valueOf(c)));
+                }
+            }
+            return choices.size() == 1 ? choices.get(0) : NFAUtil.aOrB(choices.toArray(new NFASegment[0]));
+        }
+    }
+
+    private static class Sequence extends Node {
+        final List<Node> parts = new ArrayList<Node>();
+
+        int length() {
+            int length = 0;
+            for (Node part : parts) {
+                if (part.length() < 0) {
+                    return -1;
+                }
+                length += part.length();
+            }
+            return length;
+        }
+
+        NFASegment build() {
+            NFASegment segment = NFAUtil.empty();
+            for (Node part : parts) {
+                segment = NFAUtil.ab(segment, part.build());
+            }
+            return segment;
+        }
+    }
+
+    private static class Alternation extends Node {
+        final List<Node> choices = new ArrayList<Node>();
+
+        int length() {
+            int length = choices.get(0).length();
+            for (Node choice : choices) {
+                if (choice.length() != length) {
+                    return -1;
+                }
+            }
+            return length;
+        }
+
+        NFASegment build() {
+            NFASegment[] segments = new NFASegment[choices.size()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = choices.get(i).build();
+            }
+            return NFAUtil.aOrB(segments);
+        }
+    }
+
+    private static class Repeat extends Node {
+        final Node part;
+        final int times;
+
+        Repeat(final Node part, final int times) {
+            this.part = part;
+            this.times = times;
+        }
+
+        int length() {
+            int length = part.length();
+            return length < 0 || (long) length * times > MAX_LENGTH ? -1 : length * times;
+        }
+
+        NFASegment build() {
+            NFASegment segment = NFAUtil.empty();
+            for (int i = 0; i < times; i++) {
+                segment = NFAUtil.ab(segment, part.build());
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Reads the handled subset of the java.util.regex syntax, throwing an
+     * IllegalArgumentException at anything else.
+     */
+    private static class Parser {
+        private final String regex;
+        private int pos = 0;
+
+        Parser(final String regex) {
+            this.regex = regex;
+        }
+
+        Node alternation() {
+            Alternation alternation = new Alternation();
+            alternation.choices.add(sequence());
+            while (peek() == '|') {
+                pos++;
+                alternation.choices.add(sequence());
+            }
+            return alternation.choices.size() == 1 ? alternation.choices.get(0) : alternation;
+        }
+
+        private Node sequence() {
+            Sequence sequence = new Sequence();
+            while (pos < regex.length() && peek() != '|' && peek() != ')') {
+                sequence.parts.add(quantified(atom()));
+            }
+            return sequence;
+        }
+
+        private Node quantified(final Node atom) {
+            if (peek() != '{') {
+                if (peek() == '?' || peek() == '*' || peek() == '+') {
+                    throw new IllegalArgumentException("variable length");
+                }
+                return atom;
+            }
+            pos++;
+            int times = number();
+            if (peek() == ',') {
+                pos++;
+                if (number() != times) {
+                    throw new IllegalArgumentException("variable length");
+                }
+            }
+            expect('}');
+
+            // Lazy and possessive forms match the same when the count is fixed
+            if (peek() == '?' || peek() == '+') {
+                pos++;
+            }
+            return new Repeat(atom, times);
+        }
+
+        private Node atom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (peek() == '?') {
+                        pos++;
+                        expect(':');
+                    }
+                    Node group = alternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return charClass();
+                case '\\':
+                    Chars escaped = new Chars();
+                    if (!classEscape(escaped)) {
+                        escaped.set[ascii(escapedChar())] = true;
+                    }
+                    return escaped;
+                case '.':
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    // The dot can match a surrogate pair
+                    throw new IllegalArgumentException("not handled: " + c);
+                default:
+                    Chars chars = new Chars();
+                    chars.set[ascii(c)] = true;
+                    return chars;
+            }
+        }
+
+        private Node charClass() {
+            if (peek() == '^' || peek() == ']') {
+                throw new IllegalArgumentException("negated or leading bracket");
+            }
+            Chars chars = new Chars();
+            while (peek() != ']') {
+                char c = regex.charAt(pos++);
+                if (c == '[' || (c == '&' && peek() == '&')) {
+                    throw new IllegalArgumentException("nested class");
+                }
+                if (c == '\\') {
+                    if (classEscape(chars)) {
+                        continue;
+                    }
+                    c = escapedChar();
+                }
+
+                char last = c;
+                if (peek() == '-' && peekAt(pos + 1) != ']') {
+                    pos += 2;
+                    last = regex.charAt(pos - 1);
+                    if (last == '\\') {
+                        last = escapedChar();
+                    } else if (last == '[') {
+                        throw new IllegalArgumentException("nested class");
+                    }
+                    if (last < c) {
+                        throw new IllegalArgumentException("range");
+                    }
+                }
+                for (int r = c; r <= last; r++) {
+                    chars.set[ascii((char) r)] = true;
+                }
+            }
+            pos++;
+            return chars;
+        }
+
+        /**
+         * Add the chars of a class escape after a backslash, if there is one.
+         *
+         * @return false if the escape is not a class escape, and was not read.
+         */
+        private boolean classEscape(final Chars chars) {
+            switch (peek()) {
+                case 'd':
+                    range(chars, '0', '9');
+                    break;
+                case 'w':
+                    range(chars, 'a', 'z');
+                    range(chars, 'A', 'Z');
+                    range(chars, '0', '9');
+                    chars.set['_'] = true;
+                    break;
+                case 's':
+                    for (char s : " \t\n\u000b\f\r".toCharArray()) {
+                        chars.set[s] = true;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+            pos++;
+            return true;
+        }
+
+        /**
+         * @return the char an escape after a backslash stands for.
+         */
+        private char escapedChar() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001b';
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // Anchors, backreferences and anything not listed above
+                        throw new IllegalArgumentException("escape \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private void range(final Chars chars, final char first, final char last) {
+            for (char c = first; c <= last; c++) {
+                chars.set[c] = true;
+            }
+        }
+
+        private int number() {
+            int start = pos;
+            int n = 0;
+            while (peek() >= '0' && peek() <= '9') {
+                n = Math.min(MAX_LENGTH + 1, n * 10 + regex.charAt(pos++) - '0');
+            }
+            if (pos == start) {
+                throw new IllegalArgumentException("number expected");
+            }
+            return n;
+        }
+
+        private void expect(final char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException(c + " expected");
+            }
+            pos++;
+        }
+
+        private char peek() {
+            return peekAt(pos);
+        }
+
+        private char peekAt(final int at) {
+            return at < regex.length() ? regex.charAt(at) : '\0';
+        }
+
+        private static int ascii(final char c) {
+            if (c >= CompiledDFA.ALPHABET_SIZE) {
+                throw new IllegalArgumentException("not ASCII");
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DFARegexTest {
+
+    @Test
+    public void handledTest() {
+        for (String regex : new String[]{"a", "abc", "[a-c]{2}x", "(ab|cd)e", "(?:a|b){3,3}", "\\d\\d-\\w",
+                "[\\-a-]\\]", "\\(\\)", "a}", "x{2}+", "[\\t ]\\s"}) {
+            assertNotNull(regex, DFARegex.compile(regex, false));
+        }
+        for (String regex : new String[]{"a*", "ab?", "a+", "a{1,2}", "(a|bc)", ".", "[^a]", "^a", "a$", "\\ba",
+                "(a)\\1", "(?i)a", "(?<n>a)", "[a[b]]", "[a&&b]", "\u00e9", "", "a|", "(a", "a{", "\\Qa\\E",
+                "a{65}"}) {
+            assertNull(regex, DFARegex.compile(regex, false));
+        }
+    }
+
+    @Test
+    public void findTest() {
+        String[] regexes = {"ab", "aab", "[ab]{3}", "(ab|ba)a", "a\\d", "(a|b)(b|a)b", "[a-b0]{2}[ab]"};
+        Random random = new Random(7);
+        for (boolean bytecode : new boolean[]{false, true}) {
+            for (String regex : regexes) {
+                DFARegex dfa = DFARegex.compile(regex, bytecode);
+                assertTrue(regex, dfa.isComplete());
+                assertFinds(regex, dfa, random, "ab01 \u00e9", 40);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void manyStatesTest() {
+        // The DFA of .*a[ab]{n} has 2^(n+1) states
+        Random random = new Random(11);
+        for (int n : new int[]{4, 12, 20}) {
+            String regex = "a[ab]{" + n + "}";
+            for (boolean bytecode : new boolean[]{false, true}) {
+                DFARegex dfa = DFARegex.compile(regex, bytecode);
+                assertEquals(regex, n < 10, dfa.isComplete());
+                assertFinds(regex, dfa, random, "aaab\u00e9", 100);
+            }
+        }
+    }
+
+    private static void assertFinds(final String regex, final DFARegex dfa, final Random random,
+                                    final String alphabet, final int maxLength) {
+        Matcher matcher = Pattern.compile(regex).matcher("");
+        for (int n = 0; n < 200; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(maxLength);
+            for (int i = 0; i < length; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = sb.toString();
+
+            matcher.reset(text);
+            StringBuilder expected = new StringBuilder();
+            while (matcher.find()) {
+                expected.append(matcher.start()).append('-').append(matcher.end()).append(' ');
+            }
+            StringBuilder actual = new StringBuilder();
+            int end = 0;
+            while ((end = dfa.findEnd(text, end)) >= 0) {
+                actual.append(end - dfa.getLength()).append('-').append(end).append(' ');
+            }
+            assertEquals(regex + " in " + text, expected.toString(), actual.toString());
+        }
+    }
+}
@@ -4,6 +4,14 @@ import project.phase2.structs.StringMatchList;
 import project.phase2.structs.StringMatchTuple;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -20,26 +28,146 @@ public class FileIO {
         out.close();
     }
 
+    /**
+     * Files up to this many bytes are read into a reusable direct buffer;
+     * longer ones are memory-mapped.
+     */
+    public static final int READ_SIZE = 1 << 16;
+
+    // Every thread reads through its own buffer and decoder, made on first use
+    private static final ThreadLocal<ByteBuffer> readBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(READ_SIZE);
+        }
+    };
+
+    private static final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>();
+
     /**
      * Convert an entire file to a string.
      *
+     * The bytes of the file are taken from a direct buffer. A file of pure
+     * ASCII is copied straight into a string, one char per byte; any other
+     * file is decoded with the default charset into a char array sized from
+     * the length of the file.
+     *
      * @param file the file
      * @return the string representing the file
      * @throws IOException file reading has been blocked
      */
     public static String readEntireFile(final File file) throws IOException {
-        StringBuffer fileData = new StringBuffer(1000);
-        BufferedReader reader = new BufferedReader(
-                new FileReader(file));
-        char[] buf = new char[1024];
-        int numRead = 0;
-        while ((numRead = reader.read(buf)) != -1) {
-            String readData = String.valueOf(buf, 0, numRead);
-            fileData.append(readData);
-            buf = new char[1024];
-        }
-        reader.close();
-        return fileData.toString();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer bytes = readBytes(file, in.getChannel());
+            if (isAscii(bytes)) {
+                byte[] data = new byte[bytes.remaining()];
+                bytes.get(data);
+                return new String(data, StandardCharsets.ISO_8859_1);
+            }
+            CharBuffer chars = decode(bytes);
+            return new String(chars.array(), 0, chars.limit());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Map a file into memory as text. A file of pure ASCII is handed out as a
+     * view of the mapped bytes, without copying; any other file is decoded
+     * with the default charset.
+     *
+     * @param file the file, at most 2GB long.
+     * @return the text of the file.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static CharSequence mapText(final File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + file);
+            }
+            // The mapping stays valid once the file is closed
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (isAscii(bytes)) {
+                return new AsciiCharSequence(bytes, 0, bytes.limit());
+            }
+            return decode(bytes);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the bytes of a file, in the reusable buffer of this thread or
+     *         in a mapping of the file.
+     */
+    private static ByteBuffer readBytes(final File file, final FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to read: " + file);
+        }
+        if (size > READ_SIZE) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        ByteBuffer bytes = readBuffers.get();
+        bytes.clear();
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+            // Until the end of the file
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Decode bytes with the default charset, replacing malformed input as
+     * FileReader does.
+     *
+     * @return the chars, ready to be read.
+     */
+    private static CharBuffer decode(final ByteBuffer bytes) {
+        CharsetDecoder decoder = decoders.get();
+        if (decoder == null || !decoder.charset().equals(Charset.defaultCharset())) {
+            decoder = Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.set(decoder);
+        }
+        decoder.reset();
+
+        CharBuffer chars = CharBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8,
+                (long) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1));
+        while (decoder.decode(bytes, chars, true).isOverflow()) {
+            chars = grow(chars);
+        }
+        while (decoder.flush(chars).isOverflow()) {
+            chars = grow(chars);
+        }
+        chars.flip();
+        return chars;
+    }
+
+    private static CharBuffer grow(final CharBuffer chars) {
+        CharBuffer bigger = CharBuffer.allocate(Math.max(16, chars.capacity() * 2));
+        chars.flip();
+        return bigger.put(chars);
+    }
+
+    private static boolean isAscii(final ByteBuffer bytes) {
+        int i = 0;
+        for (; i + 8 <= bytes.limit(); i += 8) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static List<String> readEntireFileIntoLines(final File file) throws IOException {
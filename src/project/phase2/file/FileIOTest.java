@@ -0,0 +1,56 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileIOTest {
+
+    @Test
+    public void readEntireFileTest() throws IOException {
+        Random random = new Random(5);
+        // Empty, within one read, and across several, split anywhere
+        int[] sizes = {0, 1, 1000, FileIO.READ_SIZE - 1, FileIO.READ_SIZE + 1, 3 * FileIO.READ_SIZE + 7};
+        for (int size : sizes) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                // Mostly ASCII, with some UTF-8 sequences and stray bytes
+                bytes[i] = (byte) (random.nextInt(10) == 0 ? 0x80 + random.nextInt(0x70) : 'a' + random.nextInt(26));
+            }
+            File file = File.createTempFile("fileio", ".txt");
+            try {
+                FileOutputStream out = new FileOutputStream(file);
+                out.write(bytes);
+                out.close();
+
+                assertEquals(String.valueOf(size), readWithReader(file), FileIO.readEntireFile(file));
+                assertEquals(String.valueOf(size), readWithReader(file), FileIO.mapText(file).toString());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static String readWithReader(final File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file));
+        try {
+            char[] buf = new char[1024];
+            int read;
+            while ((read = reader.read(buf)) != -1) {
+                sb.append(buf, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package project.phase2.file;
+
+/**
+ * Finds the places a regex can start matching by looking for the literal
+ * text every one of its matches starts with, so the regex itself only runs
+ * at those places.
+ *
+ * The literal prefix is read from the pattern source: plain and escaped
+ * characters up to the first special one. A pattern with an alternation, or
+ * that starts with anything else, has no prefilter.
+ */
+public class LiteralPrefilter {
+
+    private static final String SPECIAL = "[](){}.*+?^$|\\";
+
+    private final String literal;
+    private final byte[] bytes;
+
+    private LiteralPrefilter(final String literal) {
+        this.literal = literal;
+        this.bytes = new byte[literal.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) literal.charAt(i);
+        }
+    }
+
+    /**
+     * @param regex a pattern that compiles.
+     * @return a prefilter for the pattern, or null if it has no literal
+     *         prefix.
+     */
+    public static LiteralPrefilter forRegex(final String regex) {
+        String literal = literalPrefix(regex);
+        return literal.length() == 0 ? null : new LiteralPrefilter(literal);
+    }
+
+    /**
+     * @return the ASCII text every match of the pattern starts with; empty if
+     *         there is none.
+     */
+    public static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int length = 1;
+            if (c == '\\') {
+                // Only escaped punctuation stands for itself
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    break;
+                }
+                c = regex.charAt(i + 1);
+                length = 2;
+            } else if (SPECIAL.indexOf(c) >= 0) {
+                break;
+            }
+            if (c > 127) {
+                break;
+            }
+
+            // A quantified char may be missing, or repeated
+            char next = i + length < regex.length() ? regex.charAt(i + length) : '\0';
+            if (next == '?' || next == '*' || next == '{') {
+                break;
+            }
+            prefix.append(c);
+            if (next == '+') {
+                break;
+            }
+            i += length;
+        }
+        return prefix.toString();
+    }
+
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return the first index at or after from where the literal occurs in
+     *         the text, or -1.
+     */
+    public int indexOf(final CharSequence text, final int from) {
+        if (text instanceof AsciiCharSequence) {
+            return ((AsciiCharSequence) text).indexOf(bytes, from);
+        }
+
+        char first = literal.charAt(0);
+        int last = text.length() - literal.length();
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) == first && startsAt(text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsAt(final CharSequence text, final int at) {
+        for (int j = 1; j < literal.length(); j++) {
+            if (text.charAt(at + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
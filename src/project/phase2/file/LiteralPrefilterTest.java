@@ -0,0 +1,51 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LiteralPrefilterTest {
+
+    @Test
+    public void literalPrefixTest() {
+        assertEquals("ERROR ", LiteralPrefilter.literalPrefix("ERROR [A-Z]*"));
+        assertEquals("a.b", LiteralPrefilter.literalPrefix("a\\.b\\d"));
+        assertEquals("ab", LiteralPrefilter.literalPrefix("abc?d"));
+        assertEquals("ab", LiteralPrefilter.literalPrefix("ab+c"));
+        assertEquals("", LiteralPrefilter.literalPrefix("a*b"));
+        assertEquals("", LiteralPrefilter.literalPrefix("abc|d"));
+        assertEquals("", LiteralPrefilter.literalPrefix("(?i)abc"));
+        assertEquals("", LiteralPrefilter.literalPrefix("^abc"));
+        assertNull(LiteralPrefilter.forRegex("[a-z]+"));
+    }
+
+    @Test
+    public void indexOfTest() {
+        Random random = new Random(11);
+        for (int round = 0; round < 500; round++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                sb.append("abc\u0081".charAt(random.nextInt(4)));
+            }
+            String text = sb.toString();
+            String literal = "abc".substring(random.nextInt(3));
+            literal = literal.substring(0, Math.min(literal.length(), 1 + random.nextInt(2)));
+            LiteralPrefilter prefilter = LiteralPrefilter.forRegex(literal + "+");
+
+            // Offset into the buffer, to check the view does not look outside
+            byte[] bytes = ("xx" + text + "ab").getBytes(StandardCharsets.ISO_8859_1);
+            AsciiCharSequence ascii = new AsciiCharSequence(ByteBuffer.wrap(bytes), 2, text.length());
+            for (int from = 0; from <= text.length(); from++) {
+                int expected = text.indexOf(prefilter.getLiteral(), from);
+                assertEquals(text + " " + from, expected, prefilter.indexOf(ascii, from));
+                assertEquals(text + " " + from, expected, prefilter.indexOf(text, from));
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package project.phase2.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads a file one line at a time through memory-mapped windows.
+ *
+ * Lines are separated by the platform line separator, like
+ * FileIO.readEntireFileIntoLines, and the text after the last separator is
+ * the last line, even when empty. A line of pure ASCII is handed out as a
+ * view of the mapped bytes; any other line is decoded with the default
+ * charset. Only the current window is mapped, so memory does not grow with
+ * the size of the file.
+ *
+ * A reader can also be limited to a range of bytes that starts at the
+ * beginning of a line. The range then ends after the last separator in it,
+ * or at the end of the file.
+ */
+public class MappedFileLines implements Closeable {
+
+    /**
+     * Initial size of a mapped window, in bytes. A window is doubled when a
+     * single line does not fit in it.
+     */
+    public static final int WINDOW_SIZE = 1 << 26;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long end;
+    private final boolean endOfFile;
+    private final byte[] separator;
+    private final Charset charset = Charset.defaultCharset();
+
+    private long windowSize;
+    private long windowStart;
+    private MappedByteBuffer window = null;
+
+    private long lineStart;
+    private long lineEnd = -1;
+    private boolean lastLine = false;
+    private boolean ascii = true;
+    private int lineNumber = 0;
+
+    public MappedFileLines(final File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * @param file       the file to read.
+     * @param windowSize initial size of a mapped window, in bytes.
+     */
+    public MappedFileLines(final File file, final int windowSize) throws IOException {
+        this(file, 0, Long.MAX_VALUE, windowSize);
+    }
+
+    /**
+     * Read the lines in a range of a file.
+     *
+     * @param file       the file to read.
+     * @param start      offset of the first line, in bytes.
+     * @param end        offset the range ends at, in bytes; cut to the size of
+     *                   the file.
+     * @param windowSize initial size of a mapped window, in bytes.
+     */
+    public MappedFileLines(final File file, final long start, final long end, final int windowSize)
+            throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.end = Math.min(end, channel.size());
+        this.endOfFile = this.end == channel.size();
+        this.separator = System.getProperty("line.separator").getBytes(charset);
+        this.windowSize = windowSize;
+        this.windowStart = start;
+        this.lineStart = start;
+    }
+
+    /**
+     * Move to the next line.
+     *
+     * @return false if there are no more lines.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public boolean next() throws IOException {
+        if (lastLine) {
+            return false;
+        }
+        if (lineNumber > 0) {
+            lineStart = lineEnd + separator.length;
+        }
+        if (lineStart == end && !endOfFile) {
+            // Whatever follows the last separator lies past the range
+            return false;
+        }
+        lineNumber++;
+
+        long scan = lineStart;
+        ascii = true;
+        while (true) {
+            long windowEnd = map(lineStart, scan);
+
+            // Stop where a whole separator no longer fits, unless the file ends there
+            long limit = windowEnd == end ? windowEnd : windowEnd - separator.length + 1;
+            for (; scan < limit; scan++) {
+                byte b = window.get((int) (scan - windowStart));
+                if (b == separator[0] && isSeparator(scan, windowEnd)) {
+                    lineEnd = scan;
+                    return true;
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+            }
+            if (windowEnd == end) {
+                lineEnd = end;
+                lastLine = true;
+                return true;
+            }
+        }
+    }
+
+    private boolean isSeparator(final long at, final long windowEnd) {
+        if (at + separator.length > windowEnd) {
+            return false;
+        }
+        for (int i = 1; i < separator.length; i++) {
+            if (window.get((int) (at + i - windowStart)) != separator[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make sure the mapped window holds the line from its start up to a whole
+     * separator past the scan position, or up to the end of the file.
+     *
+     * @return the end of the mapped window.
+     */
+    private long map(final long start, final long scan) throws IOException {
+        if (window != null && windowStart <= start) {
+            long windowEnd = windowStart + window.limit();
+            if (windowEnd == end || scan + separator.length <= windowEnd) {
+                return windowEnd;
+            }
+            if (windowStart == start) {
+                // The line does not fit in the window
+                if (windowSize > Integer.MAX_VALUE / 2) {
+                    throw new IOException("Line " + lineNumber + " is too long to map");
+                }
+                windowSize *= 2;
+            }
+        }
+
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, end - start));
+        return windowStart + window.limit();
+    }
+
+    /**
+     * @return the current line, starting at 1.
+     */
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the text of the current line, without its separator.
+     */
+    public CharSequence line() {
+        int offset = (int) (lineStart - windowStart);
+        int length = (int) (lineEnd - lineStart);
+        if (ascii) {
+            return new AsciiCharSequence(window, offset, length);
+        }
+
+        ByteBuffer bytes = window.duplicate();
+        bytes.position(offset);
+        bytes.limit(offset + length);
+        return charset.decode(bytes);
+    }
+
+    /**
+     * @return the offset just past the separator of the current line, where
+     *         the next line starts; or the end of the range for the last line.
+     */
+    public long nextLineStart() {
+        return lastLine ? end : lineEnd + separator.length;
+    }
+
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,48 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFileLinesTest {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void smallWindowTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < i % 37; j++) {
+                sb.append((char) ('a' + (i + j) % 26));
+            }
+            sb.append(NL);
+        }
+        sb.append("tail");
+        File file = write(sb.toString());
+
+        // Lines longer than the window force it to grow
+        MappedFileLines lines = new MappedFileLines(file, 8);
+        List<String> expected = FileIO.readEntireFileIntoLines(file);
+        try {
+            for (String line : expected) {
+                assertTrue(lines.next());
+                assertEquals(line, lines.line().toString());
+            }
+            assertTrue(!lines.next());
+        } finally {
+            lines.close();
+            file.delete();
+        }
+    }
+
+    private static File write(final String text) throws IOException {
+        File file = File.createTempFile("mapped", ".txt");
+        FileIO.writeFile(file, text);
+        return file;
+    }
+}
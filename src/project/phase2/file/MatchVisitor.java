@@ -0,0 +1,16 @@
+package project.phase2.file;
+
+/**
+ * Receives the matches of a find one at a time, in file order.
+ */
+public interface MatchVisitor {
+
+    /**
+     * @param string     the regex that matched.
+     * @param fileName   path of the file searched.
+     * @param line       line of the match, starting at 1.
+     * @param startIndex index of the match in the line.
+     * @param endIndex   index just past the match.
+     */
+    void visit(String string, String fileName, int line, int startIndex, int endIndex);
+}
@@ -0,0 +1,232 @@
+package project.phase2.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * An editable text made of pieces of an original text, which is never
+ * changed, and of an append-only buffer holding the inserted text.
+ *
+ * The pieces are kept in order in a treap, where every node knows the length
+ * of its subtree, so finding, inserting and deleting at an index take
+ * O(log n) expected time in the number of pieces. The original can be a view
+ * of a memory-mapped file, from FileIO.mapText, so only the edits are held
+ * in memory.
+ *
+ * charAt remembers the last piece it read from, which makes reading along
+ * the text, as a regex does, cost O(1) per char.
+ */
+public class PieceTable implements CharSequence {
+
+    private static final int WRITE_SIZE = 1 << 13;
+
+    private final CharSequence original;
+    private final StringBuilder added = new StringBuilder();
+    private final Random random = new Random();
+    private Node root;
+
+    // The piece charAt last read from, and where it starts in the text
+    private Node cached = null;
+    private int cachedStart = 0;
+
+    public PieceTable(final CharSequence original) {
+        this.original = original;
+        root = original.length() == 0 ? null : new Node(false, 0, original.length());
+    }
+
+    public int length() {
+        return size(root);
+    }
+
+    public char charAt(final int index) {
+        if (cached == null || index < cachedStart || index >= cachedStart + cached.length) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            Node node = root;
+            int start = 0;
+            while (true) {
+                int left = size(node.left);
+                if (index < start + left) {
+                    node = node.left;
+                } else if (index >= start + left + node.length) {
+                    start += left + node.length;
+                    node = node.right;
+                } else {
+                    cached = node;
+                    cachedStart = start + left;
+                    break;
+                }
+            }
+        }
+        return source(cached).charAt(cached.start + index - cachedStart);
+    }
+
+    /**
+     * @return a copy of the chars from start up to end.
+     */
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    public void insert(final int index, final CharSequence text) {
+        replace(index, index, text);
+    }
+
+    public void delete(final int start, final int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Replace the chars from start up to end with text.
+     */
+    public void replace(final int start, final int end, final CharSequence text) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        cached = null;
+
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        Node middle = null;
+        if (text.length() > 0) {
+            middle = new Node(true, added.length(), text.length());
+            added.append(text);
+        }
+        root = merge(merge(head[0], middle), tail[1]);
+    }
+
+    /**
+     * @return the number of pieces the text is made of.
+     */
+    public int pieces() {
+        int count = 0;
+        Deque<Node> stack = new ArrayDeque<Node>();
+        for (Node node = root; node != null || !stack.isEmpty(); node = node.right) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+            node = stack.pop();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write the text, piece by piece, without building it as a whole.
+     */
+    public void writeTo(final Writer out) throws IOException {
+        char[] buffer = new char[WRITE_SIZE];
+        Deque<Node> stack = new ArrayDeque<Node>();
+        for (Node node = root; node != null || !stack.isEmpty(); node = node.right) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+            node = stack.pop();
+
+            CharSequence source = source(node);
+            for (int offset = 0; offset < node.length; offset += buffer.length) {
+                int length = Math.min(buffer.length, node.length - offset);
+                for (int i = 0; i < length; i++) {
+                    buffer[i] = source.charAt(node.start + offset + i);
+                }
+                out.write(buffer, 0, length);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private CharSequence source(final Node node) {
+        return node.added ? added : original;
+    }
+
+    /**
+     * Split a tree into the pieces before index and those after, cutting a
+     * piece in two when index falls inside it.
+     */
+    private Node[] split(final Node node, final int index) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int left = size(node.left);
+        if (index <= left) {
+            Node[] parts = split(node.left, index);
+            node.left = parts[1];
+            node.update();
+            return new Node[]{parts[0], node};
+        }
+        if (index >= left + node.length) {
+            Node[] parts = split(node.right, index - left - node.length);
+            node.right = parts[0];
+            node.update();
+            return new Node[]{node, parts[1]};
+        }
+
+        int cut = index - left;
+        Node rest = new Node(node.added, node.start + cut, node.length - cut);
+        Node right = node.right;
+        node.length = cut;
+        node.right = null;
+        node.update();
+        return new Node[]{node, merge(rest, right)};
+    }
+
+    private static Node merge(final Node a, final Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private static int size(final Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * A piece of the original or of the added text, and the root of the
+     * subtree of pieces around it.
+     */
+    private class Node {
+        final boolean added;
+        final int start;
+        final int priority = random.nextInt();
+        int length;
+        int size;
+        Node left, right;
+
+        Node(final boolean added, final int start, final int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+            this.size = length;
+        }
+
+        void update() {
+            size = size(left) + length + size(right);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PieceTableTest {
+
+    @Test
+    public void randomEditTest() throws IOException {
+        Random random = new Random(3);
+        StringBuilder expected = new StringBuilder("the original text");
+        PieceTable table = new PieceTable(expected.toString());
+
+        for (int edit = 0; edit < 2000; edit++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(5));
+            String text = "abcdefgh".substring(0, random.nextInt(4));
+            expected.replace(start, end, text);
+            table.replace(start, end, text);
+
+            assertEquals(expected.length(), table.length());
+            int at = random.nextInt(expected.length() + 1);
+            if (at < expected.length()) {
+                assertEquals(expected.charAt(at), table.charAt(at));
+            }
+        }
+        assertEquals(expected.toString(), table.toString());
+
+        StringWriter out = new StringWriter();
+        table.writeTo(out);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void mappedOriginalTest() throws IOException {
+        String[] texts = {"", "plain ascii\nlines", "caf\u00e9"};
+        for (String text : texts) {
+            File file = File.createTempFile("piece", ".txt");
+            try {
+                FileIO.writeFile(file, text);
+                // Whatever the default charset made of the text
+                text = FileIO.readEntireFile(file);
+                PieceTable table = new PieceTable(FileIO.mapText(file));
+                assertEquals(text, table.toString());
+
+                table.insert(0, "<");
+                table.insert(table.length(), ">");
+                table.delete(1, Math.min(2, table.length() - 1));
+                StringBuilder expected = new StringBuilder("<" + text + ">");
+                expected.delete(1, Math.min(2, expected.length() - 1));
+                assertEquals(expected.toString(), table.toString());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package project.phase2.file;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces every match of a pattern, over and over, until no match is left.
+ *
+ * The result is the same as running Matcher.replaceAll until the pattern no
+ * longer matches, but only the first pass searches the whole text. A pattern
+ * with matches of at most maxLength chars can only find a new match at a
+ * start that sees, within maxLength plus SLACK chars, a replacement made by
+ * the pass before; anywhere else it would have matched the pass before. So
+ * each pass keeps a work-list of the places it rewrote, and the next pass
+ * only searches the windows around them.
+ *
+ * The text is a PieceTable, so each replacement is an O(log n) edit rather
+ * than a copy of the text.
+ */
+public class RecursiveReplacer {
+
+    /**
+     * Chars around a match that anchors and word boundaries look at.
+     */
+    public static final int SLACK = 2;
+
+    private RecursiveReplacer() {
+    }
+
+    /**
+     * Replace matches until there are none.
+     *
+     * @param pattern     the pattern to replace; it must not match the empty
+     *                    string.
+     * @param maxLength   the longest match the pattern can make, from
+     *                    RegexBounds.maxLength.
+     * @param replacement the replacement, with group references as in
+     *                    Matcher.appendReplacement.
+     * @param text        the text to replace in, edited in place.
+     * @return the number of replaced matches.
+     */
+    public static long replace(final Pattern pattern, final int maxLength, final String replacement,
+                               final PieceTable text) {
+        return replace(pattern, null, maxLength, replacement, text);
+    }
+
+    /**
+     * Replace matches until there are none, finding them with a DFA if there
+     * is one. The pattern is then only run on the matches, for their groups.
+     *
+     * @param pattern     the pattern to replace; it must not match the empty
+     *                    string.
+     * @param dfa         the DFA of the pattern, or null.
+     * @param maxLength   the longest match the pattern can make, from
+     *                    RegexBounds.maxLength.
+     * @param replacement the replacement, with group references as in
+     *                    Matcher.appendReplacement.
+     * @param text        the text to replace in, edited in place.
+     * @return the number of replaced matches.
+     */
+    public static long replace(final Pattern pattern, final DFARegex dfa, final int maxLength,
+                               final String replacement, final PieceTable text) {
+        boolean literal = replacement.indexOf('\\') < 0 && replacement.indexOf('$') < 0;
+        long replaced = 0;
+
+        // Windows of starts to search, as pairs of first and last start
+        IntList windows = new IntList();
+        windows.add(0);
+        windows.add(text.length());
+
+        Matcher matcher = pattern.matcher(text);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+
+        while (true) {
+            // Find the matches of this pass before changing anything
+            IntList matches = new IntList();
+            List<String> replacements = new ArrayList<String>();
+            int from = 0;
+            for (int w = 0; w < windows.size(); w += 2) {
+                int last = windows.get(w + 1);
+                from = Math.max(from, windows.get(w));
+                if (from > last) {
+                    continue;
+                }
+
+                // Room for a whole match from the last start
+                int to = Math.min(text.length(), last + maxLength + SLACK);
+                matcher.region(from, to);
+                while ((dfa == null ? matcher.find() : find(dfa, matcher, text, from, to)) && matcher.start() <= last) {
+                    matches.add(matcher.start());
+                    matches.add(matcher.end());
+                    if (literal) {
+                        replacements.add(replacement);
+                    } else {
+                        StringBuilder sb = new StringBuilder();
+                        StreamReplacer.appendReplacement(matcher, replacement, sb);
+                        replacements.add(sb.toString());
+                    }
+                    from = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+                }
+            }
+            if (matches.size() == 0) {
+                return replaced;
+            }
+            replaced += replacements.size();
+
+            // The next pass searches around the replacements, where they end up
+            windows = new IntList();
+            int shift = 0;
+            for (int i = 0; i < replacements.size(); i++) {
+                int start = matches.get(2 * i) + shift;
+                int end = start + replacements.get(i).length();
+                addWindow(windows, start - maxLength - SLACK, end + SLACK);
+                shift += replacements.get(i).length() - (matches.get(2 * i + 1) - matches.get(2 * i));
+            }
+            windows.set(windows.size() - 1, Math.min(windows.get(windows.size() - 1), text.length() + shift));
+
+            // From the back, so the matches before keep their place
+            for (int i = replacements.size() - 1; i >= 0; i--) {
+                text.replace(matches.get(2 * i), matches.get(2 * i + 1), replacements.get(i));
+            }
+            matcher.reset(text);
+        }
+    }
+
+    /**
+     * Find the next match with the dfa, and leave it as the match of the
+     * matcher.
+     *
+     * @return false if there is none.
+     */
+    private static boolean find(final DFARegex dfa, final Matcher matcher, final CharSequence text, final int from,
+                                final int to) {
+        int end = dfa.findEnd(text, from, to);
+        if (end < 0) {
+            return false;
+        }
+        matcher.region(end - dfa.getLength(), end);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("No match of " + matcher.pattern() + " at " + (end - dfa.getLength()));
+        }
+        return true;
+    }
+
+    /**
+     * Add a window of starts, clipped at the start of the text and merged
+     * with the last window when they overlap.
+     */
+    private static void addWindow(final IntList windows, final int first, final int last) {
+        int start = Math.max(0, first);
+        if (windows.size() > 0 && start <= windows.get(windows.size() - 1) + 1) {
+            windows.set(windows.size() - 1, last);
+        } else {
+            windows.add(start);
+            windows.add(last);
+        }
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(final int index) {
+            return values[index];
+        }
+
+        void set(final int index, final int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecursiveReplacerTest {
+
+    @Test
+    public void maxLengthTest() {
+        assertEquals(3, RegexBounds.maxLength("abc"));
+        assertEquals(5, RegexBounds.maxLength("a(bc|d)?[x-z]"));
+        assertEquals(6, RegexBounds.maxLength("(?:ab){2,3}"));
+        assertEquals(8, RegexBounds.maxLength("\\d{4}"));
+        assertEquals(4, RegexBounds.maxLength("x{0}a{4}"));
+        assertEquals(9, RegexBounds.maxLength("a{3,5}b{4,4}"));
+        assertEquals(3, RegexBounds.maxLength("^\\Qa.b\\E$"));
+        assertEquals(2, RegexBounds.maxLength("(?i)\\bx\\t"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("a*"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("[a-z]+ment"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("a{2,}"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("(a)\\1"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("a(?=b)"));
+        assertEquals(RegexBounds.UNBOUNDED, RegexBounds.maxLength("\\Ga|ba"));
+    }
+
+    @Test
+    public void previousMatchAnchorTest() throws IOException {
+        // \G would match at the start of every searched window, so it takes full passes
+        File src = File.createTempFile("recursive", ".txt");
+        File dest = File.createTempFile("recursive", ".txt");
+        try {
+            for (String text : new String[]{"yabbybaba", "yyaxxbba", "abab"}) {
+                Writer writer = new FileWriter(src);
+                writer.write(text);
+                writer.close();
+
+                StringMatchOperations.replace("\\Ga|ba", "b", src, dest, true);
+                String expected = text;
+                while (Pattern.compile("\\Ga|ba").matcher(expected).find()) {
+                    expected = expected.replaceAll("\\Ga|ba", "b");
+                }
+                assertEquals(text, expected, new String(Files.readAllBytes(dest.toPath())));
+            }
+        } finally {
+            src.delete();
+            dest.delete();
+        }
+    }
+
+    @Test
+    public void replaceAllUntilDoneTest() {
+        String[][] replacements = {
+                {"aa", "b"}, {"ab", "ba"}, {"ab|ba", ""}, {"(a)b", "c$1"}, {"\\bab", "x"}, {"a.b", "c"},
+                {"ab$", "c"}, {"^b", "a"}, {"[ab]c", "d"}, {"(?m)^a", "b"}, {"q", "z"}
+        };
+        Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                sb.append("aabbc \n".charAt(random.nextInt(7)));
+            }
+            String text = sb.toString();
+
+            for (String[] replacement : replacements) {
+                Pattern pattern = Pattern.compile(replacement[0]);
+                String expected = text;
+                while (pattern.matcher(expected).find()) {
+                    expected = pattern.matcher(expected).replaceAll(replacement[1]);
+                }
+
+                int maxLength = RegexBounds.maxLength(replacement[0]);
+                PieceTable found = new PieceTable(text);
+                RecursiveReplacer.replace(pattern, maxLength, replacement[1], found);
+                assertEquals(replacement[0] + " " + text, expected, found.toString());
+
+                // The same through the DFA, for the patterns it handles
+                DFARegex dfa = DFARegex.compile(replacement[0], false);
+                if (dfa != null) {
+                    found = new PieceTable(text);
+                    RecursiveReplacer.replace(pattern, dfa, maxLength, replacement[1], found);
+                    assertEquals(replacement[0] + " " + text, expected, found.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package project.phase2.file;
+
+/**
+ * Works out an upper bound on the length of the text a java.util.regex
+ * pattern can match, from the pattern source.
+ *
+ * Only a plain subset of the syntax is understood: literals, escapes, classes,
+ * groups, alternation and bounded quantifiers. Anything else, including the
+ * unbounded quantifiers, backreferences, lookarounds, \G and comments mode,
+ * makes the bound UNBOUNDED. A class, a dot or a class escape counts as two chars,
+ * since it can match a surrogate pair.
+ */
+public class RegexBounds {
+
+    /**
+     * No bound could be found.
+     */
+    public static final int UNBOUNDED = -1;
+
+    // Bounds above this are not worth tracking
+    private static final int LIMIT = 1 << 20;
+
+    private final String regex;
+    private int pos = 0;
+
+    private RegexBounds(final String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * @param regex a pattern that compiles.
+     * @return the longest match the pattern can make, in chars, or UNBOUNDED.
+     */
+    public static int maxLength(final String regex) {
+        RegexBounds bounds = new RegexBounds(regex);
+        try {
+            int length = bounds.alternation();
+            return bounds.pos == regex.length() ? length : UNBOUNDED;
+        } catch (RuntimeException e) {
+            // Not understood, or cut short
+            return UNBOUNDED;
+        }
+    }
+
+    private int alternation() {
+        int length = sequence();
+        while (peek() == '|') {
+            pos++;
+            length = Math.max(length, sequence());
+        }
+        return length;
+    }
+
+    private int sequence() {
+        int length = 0;
+        while (pos < regex.length() && peek() != '|' && peek() != ')') {
+            length = bounded(length + quantified(atom()));
+        }
+        return length;
+    }
+
+    private int quantified(final int atom) {
+        int times;
+        char c = peek();
+        if (c == '?') {
+            pos++;
+            times = 1;
+        } else if (c == '{') {
+            pos++;
+            times = number();
+            if (peek() == ',') {
+                pos++;
+                if (peek() == '}') {
+                    throw new IllegalArgumentException("no upper bound");
+                }
+                times = number();
+            }
+            expect('}');
+        } else if (c == '*' || c == '+') {
+            throw new IllegalArgumentException("no upper bound");
+        } else {
+            return atom;
+        }
+
+        // Lazy and possessive forms match as much at most
+        if (peek() == '?' || peek() == '+') {
+            pos++;
+        }
+        return bounded((long) atom * times);
+    }
+
+    private int atom() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                return group();
+            case '[':
+                skipClass();
+                return 2;
+            case '.':
+                return 2;
+            case '^':
+            case '$':
+                return 0;
+            case '\\':
+                return escape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new IllegalArgumentException("dangling quantifier");
+            default:
+                if (Character.isSurrogate(c)) {
+                    throw new IllegalArgumentException("surrogate");
+                }
+                return 1;
+        }
+    }
+
+    private int group() {
+        if (peek() == '?') {
+            pos++;
+            char c = peek();
+            if (c == '<' && Character.isLetter(peekAt(pos + 1))) {
+                // Named group
+                pos = regex.indexOf('>', pos) + 1;
+                if (pos == 0) {
+                    throw new IllegalArgumentException("unterminated group name");
+                }
+            } else if (c == ':' || c == '>') {
+                pos++;
+            } else if (c == '=' || c == '!' || c == '<') {
+                throw new IllegalArgumentException("lookaround");
+            } else {
+                // Inline flags, alone or on a group
+                while (Character.isLetter(peek()) || peek() == '-') {
+                    if (peek() == 'x') {
+                        throw new IllegalArgumentException("comments mode");
+                    }
+                    pos++;
+                }
+                if (peek() == ')') {
+                    pos++;
+                    return 0;
+                }
+                expect(':');
+            }
+        }
+        int length = alternation();
+        expect(')');
+        return length;
+    }
+
+    private void skipClass() {
+        if (peek() == '^') {
+            pos++;
+        }
+        if (peek() == ']') {
+            throw new IllegalArgumentException("leading bracket");
+        }
+        int depth = 1;
+        while (depth > 0) {
+            char c = regex.charAt(pos++);
+            if (c == '\\') {
+                if (peek() == 'Q') {
+                    throw new IllegalArgumentException("quote in class");
+                }
+                pos++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    private int escape() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 'b':
+            case 'B':
+                if (peek() == '{') {
+                    throw new IllegalArgumentException("grapheme boundary");
+                }
+                return 0;
+            case 'G':
+                // Matches where the search starts, which a window of the text moves
+                throw new IllegalArgumentException("end of previous match");
+            case 'A':
+            case 'z':
+            case 'Z':
+                return 0;
+            case 't':
+            case 'n':
+            case 'r':
+            case 'f':
+            case 'a':
+            case 'e':
+                return 1;
+            case 'd':
+            case 'D':
+            case 's':
+            case 'S':
+            case 'w':
+            case 'W':
+            case 'h':
+            case 'H':
+            case 'v':
+            case 'V':
+            case 'R':
+                return 2;
+            case '0':
+                for (int i = 0; i < 3 && peek() >= '0' && peek() <= '7'; i++) {
+                    pos++;
+                }
+                return 1;
+            case 'c':
+                pos++;
+                return 1;
+            case 'u':
+                pos += 4;
+                return 1;
+            case 'x':
+                if (peek() == '{') {
+                    skipBraces();
+                } else {
+                    pos += 2;
+                }
+                return 2;
+            case 'p':
+            case 'P':
+            case 'N':
+                if (peek() == '{') {
+                    skipBraces();
+                } else {
+                    pos++;
+                }
+                return 2;
+            case 'Q':
+                int end = regex.indexOf("\\E", pos);
+                int length = (end < 0 ? regex.length() : end) - pos;
+                pos = end < 0 ? regex.length() : end + 2;
+                return length;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    // Backreferences and anything not listed above
+                    throw new IllegalArgumentException("escape \\" + c);
+                }
+                return 1;
+        }
+    }
+
+    private void skipBraces() {
+        pos = regex.indexOf('}', pos) + 1;
+        if (pos == 0) {
+            throw new IllegalArgumentException("unterminated braces");
+        }
+    }
+
+    private int number() {
+        int start = pos;
+        long n = 0;
+        while (peek() >= '0' && peek() <= '9') {
+            n = Math.min(LIMIT, n * 10 + regex.charAt(pos++) - '0');
+        }
+        if (pos == start) {
+            throw new IllegalArgumentException("number expected");
+        }
+        return (int) n;
+    }
+
+    private void expect(final char c) {
+        if (peek() != c) {
+            throw new IllegalArgumentException(c + " expected");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        return peekAt(pos);
+    }
+
+    private char peekAt(final int at) {
+        return at < regex.length() ? regex.charAt(at) : '\0';
+    }
+
+    private static int bounded(final long length) {
+        if (length > LIMIT) {
+            throw new IllegalArgumentException("too long");
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,88 @@
+package project.phase2.file;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide cache of compiled regexes, shared by find, replace and the
+ * interpreter. Patterns are immutable and thread-safe, so a cached Pattern
+ * can be handed to any number of callers; each of them creates its own
+ * Matcher.
+ *
+ * The cache holds at most MAX_SIZE patterns and evicts the least recently
+ * used one when full.
+ */
+public class RegexCache {
+
+    /**
+     * Maximum number of cached patterns.
+     */
+    public static final int MAX_SIZE = 256;
+
+    private static final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+    private RegexCache() {
+    }
+
+    /**
+     * Get the compiled form of a regex, compiling it on first use.
+     *
+     * @param regex the regex.
+     * @return the compiled pattern.
+     */
+    public static Pattern compile(final String regex) {
+        synchronized (patterns) {
+            Pattern pattern = patterns.get(regex);
+            if (pattern != null) {
+                hits++;
+                return pattern;
+            }
+            misses++;
+        }
+
+        // Compile outside of the lock; a racing duplicate is harmless
+        Pattern pattern = Pattern.compile(regex);
+        synchronized (patterns) {
+            patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    public static long getHits() {
+        synchronized (patterns) {
+            return hits;
+        }
+    }
+
+    public static long getMisses() {
+        synchronized (patterns) {
+            return misses;
+        }
+    }
+
+    public static int size() {
+        synchronized (patterns) {
+            return patterns.size();
+        }
+    }
+
+    /**
+     * Remove every pattern and reset the counters.
+     */
+    public static void clear() {
+        synchronized (patterns) {
+            patterns.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RegexCacheTest {
+
+    @Test
+    public void hitMissTest() {
+        RegexCache.clear();
+        Pattern p = RegexCache.compile("a(b|c)*");
+        assertSame(p, RegexCache.compile("a(b|c)*"));
+        RegexCache.compile("d+");
+
+        assertEquals(1, RegexCache.getHits());
+        assertEquals(2, RegexCache.getMisses());
+        assertTrue(p.matcher("abcb").matches());
+    }
+
+    @Test
+    public void evictionTest() {
+        RegexCache.clear();
+        Pattern first = RegexCache.compile("x0");
+        for (int i = 1; i <= RegexCache.MAX_SIZE; i++) {
+            RegexCache.compile("x" + i);
+            // Keep the first pattern recently used
+            RegexCache.compile("x0");
+        }
+
+        assertEquals(RegexCache.MAX_SIZE, RegexCache.size());
+        assertSame(first, RegexCache.compile("x0"));
+        long misses = RegexCache.getMisses();
+        RegexCache.compile("x1");
+        assertEquals("x1 was least recently used", misses + 1, RegexCache.getMisses());
+    }
+}
@@ -0,0 +1,265 @@
+package project.phase2.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces every match of a pattern while copying text from a reader to a
+ * writer, giving the same result as Matcher.replaceAll on the whole text.
+ *
+ * Text is read into a buffer and written out as soon as no match can start
+ * in it any more. Whether more input could still change a match is told by
+ * Matcher.hitEnd, so the buffer only grows to hold the longest match, plus
+ * CONTEXT characters kept before it for lookbehinds and word boundaries.
+ */
+public class StreamReplacer {
+
+    /**
+     * Initial size of the buffer, in chars.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of chars kept before the next match, for lookbehinds.
+     */
+    public static final int CONTEXT = 1 << 10;
+
+    private StreamReplacer() {
+    }
+
+    /**
+     * Copy text, replacing every match.
+     *
+     * @param pattern     the pattern to replace.
+     * @param replacement the replacement, with group references as in
+     *                    Matcher.appendReplacement.
+     * @param in          the text to read; not closed.
+     * @param out         where to write the result; not closed.
+     * @return the number of replaced matches.
+     * @throws IOException if reading or writing fails.
+     */
+    public static long replace(final Pattern pattern, final String replacement, final Reader in,
+                               final Writer out) throws IOException {
+        return replace(pattern, replacement, in, out, BUFFER_SIZE, CONTEXT);
+    }
+
+    static long replace(final Pattern pattern, final String replacement, final Reader in, final Writer out,
+                        final int bufferSize, final int context) throws IOException {
+        boolean literal = replacement.indexOf('\\') < 0 && replacement.indexOf('$') < 0;
+        char[] buffer = new char[bufferSize];
+        int length = 0;
+        boolean eof = false;
+
+        // Chars before pos are written; no match starts before from
+        int pos = 0;
+        int from = 0;
+        long replaced = 0;
+        StringBuilder expanded = new StringBuilder();
+
+        Matcher matcher = pattern.matcher(CharBuffer.wrap(buffer, 0, length));
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+
+        while (true) {
+            if (from <= length) {
+                matcher.region(from, length);
+            }
+
+            if (from <= length && matcher.find()) {
+                if (!matcher.hitEnd() || eof) {
+                    out.write(buffer, pos, matcher.start() - pos);
+                    if (literal) {
+                        out.write(replacement);
+                    } else {
+                        expanded.setLength(0);
+                        appendReplacement(matcher, replacement, expanded);
+                        out.append(expanded);
+                    }
+                    replaced++;
+
+                    // An empty match is not followed by another at the same place
+                    pos = matcher.end();
+                    from = matcher.end() == matcher.start() ? pos + 1 : pos;
+                    continue;
+                }
+            } else if (eof) {
+                out.write(buffer, pos, length - pos);
+                return replaced;
+            } else if (from <= length) {
+                // Everything before the first place a match could still start is final
+                int pending = matcher.hitEnd() ? firstPending(matcher, from, length) : length;
+                out.write(buffer, pos, pending - pos);
+                pos = pending;
+                from = pending;
+            }
+
+            // More input is needed; drop what is written, but for some context
+            int drop = Math.max(0, pos - context);
+            if (drop > 0) {
+                System.arraycopy(buffer, drop, buffer, 0, length - drop);
+                length -= drop;
+                pos -= drop;
+                from -= drop;
+            } else if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                eof = true;
+            } else {
+                length += read;
+            }
+            matcher.reset(CharBuffer.wrap(buffer, 0, length));
+        }
+    }
+
+    /**
+     * Copy text, replacing every match found by the DFA of the pattern.
+     *
+     * Every match has the same length, so a match the DFA finds is final
+     * whatever text follows, and only the last getLength() - 1 chars read can
+     * start a match still to come. The pattern is only run on the matches, to
+     * expand group references.
+     *
+     * @param dfa         the DFA of the pattern.
+     * @param pattern     the pattern to replace.
+     * @param replacement the replacement, with group references as in
+     *                    Matcher.appendReplacement.
+     * @param in          the text to read; not closed.
+     * @param out         where to write the result; not closed.
+     * @return the number of replaced matches.
+     * @throws IOException if reading or writing fails.
+     */
+    public static long replace(final DFARegex dfa, final Pattern pattern, final String replacement,
+                               final Reader in, final Writer out) throws IOException {
+        return replace(dfa, pattern, replacement, in, out, BUFFER_SIZE);
+    }
+
+    static long replace(final DFARegex dfa, final Pattern pattern, final String replacement, final Reader in,
+                        final Writer out, final int bufferSize) throws IOException {
+        boolean literal = replacement.indexOf('\\') < 0 && replacement.indexOf('$') < 0;
+        char[] buffer = new char[bufferSize];
+        int length = 0;
+
+        // Chars before pos are written, and no match starts before it
+        int pos = 0;
+        long replaced = 0;
+        StringBuilder expanded = new StringBuilder();
+        Matcher matcher = pattern.matcher("");
+
+        while (true) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read > 0) {
+                length += read;
+            }
+            CharBuffer text = CharBuffer.wrap(buffer, 0, length);
+
+            int end;
+            while ((end = dfa.findEnd(text, pos)) >= 0) {
+                int start = end - dfa.getLength();
+                out.write(buffer, pos, start - pos);
+                if (literal) {
+                    out.write(replacement);
+                } else {
+                    // The same span again, for its groups
+                    matcher.reset(text);
+                    matcher.region(start, end);
+                    if (!matcher.matches()) {
+                        throw new IllegalStateException("No match of " + pattern + " at " + start);
+                    }
+                    expanded.setLength(0);
+                    appendReplacement(matcher, replacement, expanded);
+                    out.append(expanded);
+                }
+                replaced++;
+                pos = end;
+            }
+
+            if (read < 0) {
+                out.write(buffer, pos, length - pos);
+                return replaced;
+            }
+
+            // Write all but the chars a match could still start in
+            int keep = Math.max(pos, length - (dfa.getLength() - 1));
+            out.write(buffer, pos, keep - pos);
+            System.arraycopy(buffer, keep, buffer, 0, length - keep);
+            length -= keep;
+            pos = 0;
+        }
+    }
+
+    /**
+     * @return the first index from which a match could start if the text went
+     *         on, given that no match starts in the text as it is.
+     */
+    private static int firstPending(final Matcher matcher, final int from, final int length) {
+        for (int start = from; start < length; start++) {
+            matcher.region(start, length);
+            matcher.lookingAt();
+            if (matcher.hitEnd()) {
+                return start;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Append the replacement for the current match, expanding $n, ${name} and
+     * backslash escapes the way Matcher.appendReplacement does.
+     */
+    static void appendReplacement(final Matcher matcher, final String replacement, final StringBuilder out) {
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                out.append(replacement.charAt(i++));
+            } else if (c != '$') {
+                out.append(c);
+            } else {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                String group;
+                if (replacement.charAt(i) == '{') {
+                    int close = replacement.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    group = matcher.group(replacement.substring(i + 1, close));
+                    i = close + 1;
+                } else {
+                    int number = replacement.charAt(i) - '0';
+                    if (number < 0 || number > 9) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    i++;
+                    // Take more digits while they still name a group
+                    while (i < replacement.length()) {
+                        int digit = replacement.charAt(i) - '0';
+                        if (digit < 0 || digit > 9 || number * 10 + digit > matcher.groupCount()) {
+                            break;
+                        }
+                        number = number * 10 + digit;
+                        i++;
+                    }
+                    group = matcher.group(number);
+                }
+                if (group != null) {
+                    out.append(group);
+                }
+            }
+        }
+    }
+}
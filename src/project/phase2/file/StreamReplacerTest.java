@@ -0,0 +1,74 @@
+package project.phase2.file;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamReplacerTest {
+
+    @Test
+    public void replaceAllTest() throws IOException {
+        String[] texts = {"", "a", "abcabc", "aaa bab  aab" + "\n" + "xaaay\n\nba", "the cat\nsat on the mat"};
+        String[][] replacements = {
+                {"a", "x"}, {"a+", "<$0>"}, {"a*", "-"}, {"b?", "_"}, {"^", ">"}, {"$", "<"},
+                {"\\bth", "TH"}, {"(a)(b)?", "$2$1\\$"}, {"\\s+", " "}, {"[a-z]+$", "END"},
+                {"(?m)^.", "#"}, {"(?<=a)b", "B"}, {"q", "z"}
+        };
+        for (String text : texts) {
+            for (String[] replacement : replacements) {
+                Pattern pattern = Pattern.compile(replacement[0]);
+                String expected = pattern.matcher(text).replaceAll(replacement[1]);
+                // Buffers from a single char up to the whole text
+                for (int bufferSize = 1; bufferSize <= text.length() + 1; bufferSize++) {
+                    for (int context = 1; context <= 3; context++) {
+                        StringWriter out = new StringWriter();
+                        StreamReplacer.replace(pattern, replacement[1], new StringReader(text), out, bufferSize,
+                                context);
+                        assertEquals(replacement[0] + " " + bufferSize, expected, out.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dfaReplaceTest() throws IOException {
+        String[] texts = {"", "a", "abcabc", "aaa bab  aab" + "\n" + "xaaay\n\nba", "acab\u00e9 ab"};
+        String[][] replacements = {
+                {"a", "x"}, {"ab", ""}, {"[ab]{2}", "<$0>"}, {"(a)(b|c)", "$2$1\\$"}, {"a\\s", "_"}, {"q", "z"}
+        };
+        for (boolean bytecode : new boolean[]{false, true}) {
+            for (String text : texts) {
+                for (String[] replacement : replacements) {
+                    Pattern pattern = Pattern.compile(replacement[0]);
+                    DFARegex dfa = DFARegex.compile(replacement[0], bytecode);
+                    String expected = pattern.matcher(text).replaceAll(replacement[1]);
+                    for (int bufferSize = 1; bufferSize <= text.length() + 1; bufferSize++) {
+                        StringWriter out = new StringWriter();
+                        StreamReplacer.replace(dfa, pattern, replacement[1], new StringReader(text), out, bufferSize);
+                        assertEquals(replacement[0] + " " + bufferSize, expected, out.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void longMatchTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 100 == 99 ? '\n' : 'a');
+        }
+        String text = sb.toString() + "b";
+        Pattern pattern = Pattern.compile("a[a\\n]*b");
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, StreamReplacer.replace(pattern, "x", new StringReader(text), out, 16, 4));
+        assertEquals("x", out.toString());
+    }
+}
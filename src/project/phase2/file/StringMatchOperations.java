@@ -1,11 +1,22 @@
 package project.phase2.file;
 
 import project.phase2.structs.StringMatchList;
-import project.phase2.structs.StringMatchTuple;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,45 +49,411 @@ public class StringMatchOperations {
         }
     }
 
+    /**
+     * Find several strings in a given file, reading and scanning the file
+     * once for all of them.
+     *
+     * @param file    the file to search.
+     * @param strings the regexes.
+     * @return the results of find for each of the strings, in order.
+     */
+    public static List<StringMatchList> find(final File file, final List<String> strings) {
+        if (strings.isEmpty()) {
+            return new ArrayList<StringMatchList>();
+        }
+        try {
+            StringMatchList[] tuples = new StringMatchList[strings.size()];
+            for (int i = 0; i < tuples.length; i++) {
+                tuples[i] = new StringMatchList();
+            }
+            scanFile(file, strings.toArray(new String[strings.size()]), CHUNK_SIZE, tuples);
+            return Arrays.asList(tuples);
+        } catch (IOException i) {
+            throw new RuntimeException("File not found! " + file);
+        }
+    }
+
     /**
      * replace a given location with a new string.
+     *
+     * The source is streamed through StreamReplacer into the destination, so
+     * neither file is held in memory. A recursive replace of a pattern with a
+     * bounded match length goes through RecursiveReplacer, which only
+     * searches again around what it replaced; any other recursive replace
+     * runs more streaming passes over the destination until one of them finds
+     * nothing to replace. Both find the matches with DFARegex when it handles
+     * the pattern.
      */
     public static void replace(final String toReplace, final String replaceWith, final File src, final File dest, final boolean recursive) {
         try {
-            String s = FileIO.readEntireFile(src);
-            if (recursive) {
-                boolean remaining = true;
-                do {
-                    s = s.replaceAll(toReplace, replaceWith);
-                    remaining = Pattern.compile(toReplace).matcher(s).find();
-                } while (remaining);
-            } else {
-                s = s.replaceAll(toReplace, replaceWith);
+            Pattern pattern = RegexCache.compile(toReplace);
+            int maxLength = RegexBounds.maxLength(toReplace);
+            if (recursive && maxLength != RegexBounds.UNBOUNDED) {
+                PieceTable text = new PieceTable(FileIO.mapText(src));
+                RecursiveReplacer.replace(pattern, DFARegex.forRegex(toReplace), maxLength, replaceWith, text);
+                File out = output(src, dest);
+                try {
+                    Writer writer = new BufferedWriter(new FileWriter(out));
+                    try {
+                        text.writeTo(writer);
+                    } finally {
+                        writer.close();
+                    }
+                    finish(out, dest);
+                } finally {
+                    if (out != dest) {
+                        out.delete();
+                    }
+                }
+                return;
+            }
+
+            long replaced = replaceFile(pattern, replaceWith, src, dest);
+            while (recursive && replaced > 0) {
+                replaced = replaceFile(pattern, replaceWith, dest, dest);
             }
-            FileIO.writeFile(dest, s);
         } catch (IOException i) {
             throw new RuntimeException("File not found! " + src);
         }
     }
 
+    /**
+     * One replacing pass from src to dest.
+     *
+     * @return the number of replaced matches.
+     */
+    private static long replaceFile(final Pattern pattern, final String replaceWith, final File src,
+                                    final File dest) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(src));
+        try {
+            File out = output(src, dest);
+            Writer writer = new BufferedWriter(new FileWriter(out));
+            try {
+                DFARegex dfa = DFARegex.forRegex(pattern.pattern());
+                long replaced = dfa == null ? StreamReplacer.replace(pattern, replaceWith, reader, writer)
+                        : StreamReplacer.replace(dfa, pattern, replaceWith, reader, writer);
+                writer.close();
+                finish(out, dest);
+                return replaced;
+            } finally {
+                writer.close();
+                if (out != dest) {
+                    out.delete();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the file to write the result of reading src to: dest itself,
+     *         or a temporary file next to it when src is the same file.
+     */
+    private static File output(final File src, final File dest) throws IOException {
+        if (src.getCanonicalFile().equals(dest.getCanonicalFile())) {
+            return File.createTempFile("replace", ".tmp", dest.getAbsoluteFile().getParentFile());
+        }
+        return dest;
+    }
+
+    /**
+     * Move a written temporary file from output into the place of dest.
+     */
+    private static void finish(final File out, final File dest) throws IOException {
+        if (out != dest) {
+            Files.move(out.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Files larger than this are split into chunks of about this many bytes,
+     * which are searched in parallel.
+     */
+    public static final long CHUNK_SIZE = 1 << 25;
+
+    /**
+     * Count the matches in a file without keeping them. The count is the size
+     * find would return.
+     *
+     * @param file   the file to search.
+     * @param string the regex.
+     * @return the number of matches.
+     */
+    public static int count(final File file, final String string) {
+        try {
+            return scanFile(file, new String[]{string}, CHUNK_SIZE, null)[0];
+        } catch (IOException i) {
+            throw new RuntimeException("File not found! " + file);
+        }
+    }
+
+    /**
+     * Hand every match in a file to a visitor as it is found, in the order
+     * find would return them. The file is read in a single pass on the
+     * calling thread and no match is kept.
+     *
+     * @param file    the file to search.
+     * @param string  the regex.
+     * @param visitor receives the matches.
+     */
+    public static void forEachMatch(final File file, final String string, final MatchVisitor visitor) {
+        try {
+            Chunk[] chunk = {new Chunk(null, visitor)};
+            scan(file, new String[]{string}, new Pattern[]{RegexCache.compile(string)}, 0, Long.MAX_VALUE, chunk);
+        } catch (IOException i) {
+            throw new RuntimeException("File not found! " + file);
+        }
+    }
+
     private static StringMatchList findInFile(final File file, final String string) throws IOException {
+        return findInFile(file, string, CHUNK_SIZE);
+    }
+
+    static StringMatchList findInFile(final File file, final String string, final long chunkSize)
+            throws IOException {
+        StringMatchList[] tuples = {new StringMatchList()};
+        scanFile(file, new String[]{string}, chunkSize, tuples);
+        return tuples[0];
+    }
+
+    /**
+     * Search a file line by line through MappedFileLines, so the file is never
+     * held in memory as a whole.
+     *
+     * The file is cut into chunks just after line separators. The chunks are
+     * searched concurrently on the fork-join pool, each with its own Matcher,
+     * and their matches are concatenated in order, with line numbers shifted
+     * by the number of lines in the chunks before.
+     *
+     * Lines are numbered like FileIO.readEntireFileIntoLines, which drops
+     * trailing empty lines unless the file is empty. Empty lines are only
+     * searched once a later line turns out not to be empty, which may be in a
+     * later chunk.
+     *
+     * Every line is read once and searched with each of the regexes in turn.
+     *
+     * @param tuples lists to add the matches of each regex to, or null to
+     *               only count them.
+     * @return the number of matches of each regex.
+     */
+    private static int[] scanFile(final File file, final String[] strings, final long chunkSize,
+                                  final StringMatchList[] tuples) throws IOException {
+
+        Pattern[] patterns = new Pattern[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            patterns[i] = RegexCache.compile(strings[i]);
+        }
+        long size = file.length();
+
+        List<ForkJoinTask<Chunk[]>> chunks = new ArrayList<ForkJoinTask<Chunk[]>>();
+        long start = 0;
+        do {
+            long end = size - start <= chunkSize ? size : nextLineStart(file, start + chunkSize);
+            chunks.add(new ChunkTask(file, strings, patterns, start, end, tuples != null));
+            start = end;
+        } while (start < size);
+
+        if (chunks.size() == 1) {
+            chunks.get(0).invoke();
+        } else {
+            for (ForkJoinTask<Chunk[]> chunk : chunks) {
+                chunk.fork();
+            }
+        }
+
+        int[] matches = new int[strings.length];
+        int lines = 0;
+        int emptyLines = 0;
+        for (ForkJoinTask<Chunk[]> task : chunks) {
+            Chunk[] found = task.join();
+
+            // The lines are the same for every regex
+            Chunk first = found[0];
+            if (first.hasText) {
+                for (int p = 0; p < strings.length; p++) {
+                    Chunk chunk = found[p];
+                    boolean matchesEmpty = patterns[p].matcher("").find();
+                    for (int empty = lines - emptyLines + 1; empty <= lines && matchesEmpty; empty++) {
+                        if (tuples != null) {
+                            tuples[p].add(strings[p], file.getPath(), empty, 0, 0);
+                        }
+                        matches[p]++;
+                    }
+                    for (int i = 0; tuples != null && i < chunk.tuples.size(); i++) {
+                        tuples[p].add(strings[p], file.getPath(), chunk.tuples.getLine(i) + lines,
+                                chunk.tuples.getStartIndex(i), chunk.tuples.getEndIndex(i));
+                    }
+                    matches[p] += chunk.matches;
+                }
+                emptyLines = first.trailingEmptyLines;
+            } else {
+                emptyLines += first.lines;
+            }
+            lines += first.lines;
+        }
+        return matches;
+    }
+
+    /**
+     * @return the offset of the first line that starts after the given offset,
+     *         or the size of the file.
+     */
+    private static long nextLineStart(final File file, final long from) throws IOException {
+        MappedFileLines lines = new MappedFileLines(file, from, Long.MAX_VALUE, 1 << 16);
+        try {
+            lines.next();
+            return lines.nextLineStart();
+        } finally {
+            lines.close();
+        }
+    }
+
+    /**
+     * Search the lines of a chunk, from the line starting at start up to end,
+     * with each of the patterns. Line numbers are counted from the start of
+     * the chunk.
+     */
+    private static void scan(final File file, final String[] strings, final Pattern[] patterns, final long start,
+                             final long end, final Chunk[] chunks) throws IOException {
+        Matcher[] matchers = new Matcher[patterns.length];
+        boolean[] matchesEmpty = new boolean[patterns.length];
+        LiteralPrefilter[] prefilters = new LiteralPrefilter[patterns.length];
+        DFARegex[] dfas = new DFARegex[patterns.length];
+        for (int p = 0; p < patterns.length; p++) {
+            matchers[p] = patterns[p].matcher("");
+            matchesEmpty[p] = matchers[p].find();
+            prefilters[p] = LiteralPrefilter.forRegex(strings[p]);
+            dfas[p] = DFARegex.forRegex(strings[p]);
+            // Started at a candidate, the matcher still sees the text before it
+            matchers[p].useTransparentBounds(true);
+            matchers[p].useAnchoringBounds(false);
+        }
+        boolean emptyFile = file.length() == 0;
+
+        MappedFileLines lines = new MappedFileLines(file, start, end, MappedFileLines.WINDOW_SIZE);
+        try {
+            int emptyLines = 0;
+            while (lines.next()) {
+                CharSequence line = lines.line();
+                if (line.length() == 0 && !emptyFile) {
+                    emptyLines++;
+                    continue;
+                }
 
-        List<String> lines = FileIO.readEntireFileIntoLines(file);
+                for (int p = 0; p < patterns.length; p++) {
+                    for (int empty = lines.lineNumber() - emptyLines; empty < lines.lineNumber() && matchesEmpty[p];
+                         empty++) {
+                        chunks[p].visit(strings[p], file.getPath(), empty, 0, 0);
+                    }
+
+                    if (dfas[p] != null) {
+                        // Every match has the same length, and ends where the DFA accepts
+                        int matchEnd = 0;
+                        while ((matchEnd = dfas[p].findEnd(line, matchEnd)) >= 0) {
+                            chunks[p].visit(strings[p], file.getPath(), lines.lineNumber(),
+                                    matchEnd - dfas[p].getLength(), matchEnd);
+                        }
+                        continue;
+                    }
+
+                    Matcher matcher = matchers[p];
+                    matcher.reset(line);
+                    if (prefilters[p] == null) {
+                        while (matcher.find()) {
+                            chunks[p].visit(strings[p], file.getPath(), lines.lineNumber(), matcher.start(),
+                                    matcher.end());
+                        }
+                        continue;
+                    }
+
+                    // Every match starts with the literal, so only try where it occurs
+                    int from = 0;
+                    while ((from = prefilters[p].indexOf(line, from)) >= 0) {
+                        matcher.region(from, line.length());
+                        if (matcher.lookingAt()) {
+                            chunks[p].visit(strings[p], file.getPath(), lines.lineNumber(), from, matcher.end());
+                            from = matcher.end();
+                        } else {
+                            from++;
+                        }
+                    }
+                }
+                emptyLines = 0;
+                for (Chunk chunk : chunks) {
+                    chunk.hasText = true;
+                }
+            }
+            for (Chunk chunk : chunks) {
+                chunk.lines = lines.lineNumber();
+                chunk.trailingEmptyLines = emptyLines;
+            }
+        } finally {
+            lines.close();
+        }
+    }
 
-        StringMatchList tuples = new StringMatchList();
+    /**
+     * Matches in one chunk of a file, with line numbers counted from the start
+     * of the chunk. The matches are kept in a list, passed on to a visitor,
+     * or only counted.
+     */
+    private static class Chunk implements MatchVisitor {
+        final StringMatchList tuples;
+        final MatchVisitor visitor;
+        int matches = 0;
+        int lines = 0;
+        int trailingEmptyLines = 0;
+        boolean hasText = false;
+
+        Chunk(final StringMatchList tuples, final MatchVisitor visitor) {
+            this.tuples = tuples;
+            this.visitor = visitor;
+        }
+
+        public void visit(final String string, final String fileName, final int line, final int startIndex,
+                          final int endIndex) {
+            matches++;
+            if (tuples != null) {
+                tuples.add(string, fileName, line, startIndex, endIndex);
+            }
+            if (visitor != null) {
+                visitor.visit(string, fileName, line, startIndex, endIndex);
+            }
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<Chunk[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final String[] strings;
+        private final Pattern[] patterns;
+        private final long start, end;
+        private final boolean keepMatches;
+
+        public ChunkTask(final File file, final String[] strings, final Pattern[] patterns, final long start,
+                         final long end, final boolean keepMatches) {
+            this.file = file;
+            this.strings = strings;
+            this.patterns = patterns;
+            this.start = start;
+            this.end = end;
+            this.keepMatches = keepMatches;
+        }
 
-        for (int line = 0; line < lines.size(); line++) {
-            Pattern pattern = Pattern.compile(string);
-            Matcher matcher = pattern.matcher(lines.get(line));
-            while (matcher.find()) {
-                StringMatchTuple t = new StringMatchTuple(string);
-                t.fileName = file.getPath();
-                t.startIndex = matcher.start();
-                t.endIndex = matcher.end();
-                t.line = 1 + line;
-                tuples.add(t);
+        @Override
+        protected Chunk[] compute() {
+            try {
+                Chunk[] chunks = new Chunk[patterns.length];
+                for (int p = 0; p < chunks.length; p++) {
+                    chunks[p] = new Chunk(keepMatches ? new StringMatchList() : null, null);
+                }
+                scan(file, strings, patterns, start, end, chunks);
+                return chunks;
+            } catch (IOException i) {
+                throw new RuntimeException("File not found! " + file);
             }
         }
-        return tuples;
     }
 }
@@ -0,0 +1,133 @@
+package project.phase2.file;
+
+import org.junit.Test;
+import project.phase2.structs.StringMatchList;
+import project.phase2.structs.StringMatchTuple;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StringMatchOperationsTest {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void findTest() throws IOException {
+        String[] texts = {"", NL + NL, "abc" + NL + NL + "xaby" + NL + NL, "caf\u00e9 ab" + NL + "ab"};
+        String[] patterns = {"ab", "a*", "[a-z]+", "\u00e9 a"};
+        for (String text : texts) {
+            File file = write(text);
+            try {
+                for (String pattern : patterns) {
+                    assertMatches(text + " " + pattern, splitFind(file, pattern),
+                            StringMatchOperations.find(file, pattern));
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void chunkedFindTest() throws IOException {
+        String[] texts = {"", NL, "ab" + NL + NL + NL + "b" + NL + NL,
+                "x" + NL + "abab" + NL + NL + "caf\u00e9 ab" + NL + NL + NL + "ab ab" + NL + "zz"};
+        String[] patterns = {"ab", "a*", "b?"};
+        for (String text : texts) {
+            File file = write(text);
+            try {
+                for (String pattern : patterns) {
+                    StringMatchList expected = splitFind(file, pattern);
+                    // Chunks from a single byte up to the whole file
+                    for (long chunkSize = 1; chunkSize <= text.length() + 1; chunkSize++) {
+                        assertMatches(pattern + " " + chunkSize, expected,
+                                StringMatchOperations.findInFile(file, pattern, chunkSize));
+                    }
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void multiFindTest() throws IOException {
+        String text = "x" + NL + NL + "abab" + NL + "caf\u00e9 ab" + NL + NL;
+        List<String> patterns = Arrays.asList("ab", "a*", "q", "ab");
+        File file = write(text);
+        try {
+            List<StringMatchList> found = StringMatchOperations.find(file, patterns);
+            assertEquals(patterns.size(), found.size());
+            for (int p = 0; p < patterns.size(); p++) {
+                assertMatches(patterns.get(p), splitFind(file, patterns.get(p)), found.get(p));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void countAndStreamTest() throws IOException {
+        String text = "x" + NL + NL + "abab" + NL + "caf\u00e9 ab" + NL + NL;
+        String[] patterns = {"ab", "a*", "q"};
+        File file = write(text);
+        try {
+            for (String pattern : patterns) {
+                StringMatchList expected = splitFind(file, pattern);
+                assertEquals(pattern, expected.size(), StringMatchOperations.count(file, pattern));
+
+                final StringMatchList streamed = new StringMatchList();
+                StringMatchOperations.forEachMatch(file, pattern, new MatchVisitor() {
+                    public void visit(final String string, final String fileName, final int line,
+                                      final int startIndex, final int endIndex) {
+                        streamed.add(string, fileName, line, startIndex, endIndex);
+                    }
+                });
+                assertMatches(pattern, expected, streamed);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertMatches(final String message, final StringMatchList expected,
+                                      final StringMatchList found) {
+        assertEquals(message, expected.size(), found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertTrue(message + " " + i, expected.get(i).hardEquals(found.get(i)));
+        }
+    }
+
+    /**
+     * The find before MappedFileLines, reading the whole file and splitting it.
+     */
+    private static StringMatchList splitFind(final File file, final String string) throws IOException {
+        List<String> lines = FileIO.readEntireFileIntoLines(file);
+        StringMatchList tuples = new StringMatchList();
+        for (int line = 0; line < lines.size(); line++) {
+            Matcher matcher = Pattern.compile(string).matcher(lines.get(line));
+            while (matcher.find()) {
+                StringMatchTuple t = new StringMatchTuple(string);
+                t.fileName = file.getPath();
+                t.startIndex = matcher.start();
+                t.endIndex = matcher.end();
+                t.line = 1 + line;
+                tuples.add(t);
+            }
+        }
+        return tuples;
+    }
+
+    private static File write(final String text) throws IOException {
+        File file = File.createTempFile("find", ".txt");
+        FileIO.writeFile(file, text);
+        return file;
+    }
+}
@@ -2,6 +2,9 @@ package project.phase2.ll1parsergenerator.dfastuff;
 
 import java.util.*;
 
+import project.nfa.CompiledDFA;
+import project.nfa.DFAMinimizer;
+
 /**
  * A specific, Deterministic, type of Finite Automaton.  This specific example assumes Characters as the transition values.
  */
@@ -68,6 +71,7 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 	
 	/**
 	 * Creates a minimum DFA from the current DFA.
+	 * Equivalent states are found with Hopcroft partition refinement, goal states with different labels are kept apart and dead states are removed.
 	 * 
 	 * @return a DFA that has been minimized.
 	 */
@@ -80,168 +84,82 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 		if(numStates < 1)
 			return retDFA;
 		
+		// Number the transition values and goal labels.
+		Map<String, Integer> symbols = new HashMap<String, Integer>();
+		Map<String, Integer> labelIds = new HashMap<String, Integer>();
 		Set<Integer> goalStates = startDFA.getGoalStates();
-		boolean[][] diff = new boolean[numStates][];
-		for(int i = 0; i < numStates; i++)
-		{
-			diff[i] = new boolean[i];
-		}
+		int[] labels = new int[numStates];
 		
-		// Initialize to final states != nonfinal.
-		for(int j = 0; j < diff.length; j++)
+		for(int state = 0; state < numStates; state++)
 		{
-			for(int i = 0; i < diff[j].length; i++)
+			for(String s : startDFA.getTransitionValues(state))
 			{
-				diff[j][i] = (goalStates.contains(j) != goalStates.contains(i));
-				
-				if(!diff[j][i] && (goalStates.contains(j) && goalStates.contains(i)))
-				{
-					String sI = startDFA.getGoalLabel(i), sJ = startDFA.getGoalLabel(j);
-					diff[j][i] = (sI == null) ? (sJ != null) : (!sI.equals(sJ));
-				}
+				if(!symbols.containsKey(s))
+					symbols.put(s, symbols.size());
+			}
+			
+			labels[state] = CompiledDFA.NO_TOKEN;
+			if(goalStates.contains(state))
+			{
+				String label = startDFA.getGoalLabel(state);
+				if(!labelIds.containsKey(label))
+					labelIds.put(label, labelIds.size());
+				labels[state] = labelIds.get(label);
 			}
 		}
 		
-		// Create our differences matrix.
-		// This builds a table of the kind we were shown in class.
-		boolean changed = true;
-		while(changed)
+		// Build the transition table.
+		int numSymbols = symbols.size();
+		int[] table = new int[numStates * numSymbols];
+		Arrays.fill(table, CompiledDFA.DEAD_STATE);
+		for(int state = 0; state < numStates; state++)
 		{
-			changed = false;
-			for(int j = 0; j < diff.length; j++)
+			for(String s : startDFA.getTransitionValues(state))
 			{
-				for(int i = 0; i < diff[j].length; i++)
-				{
-					if(diff[j][i])
-						continue;
-					
-					Set<String> transVals = new HashSet<String>();
-					transVals.addAll(startDFA.getTransitionValues(j));
-					int transSize = transVals.size();
-					transVals.addAll(startDFA.getTransitionValues(i));
-					
-					// If adding the transition values for the second item 
-					if(startDFA.getTransitionValues(i).size() != transSize || transVals.size() != transSize)
-					{
-						diff[j][i] = true;
-						changed = true;
-						continue;
-					}
-					
-					for(String tVal : transVals)
-					{
-						Transition<String, Integer> t1 = startDFA.getTransition(tVal, i), t2 = startDFA.getTransition(tVal, j);
-						
-						// We are a DFA, so we should only have 1 destination for any transition.
-						int dest1 = Math.max(t1.getDestinations()[0], t2.getDestinations()[0]), dest2 = Math.min(t1.getDestinations()[0], t2.getDestinations()[0]);
-						if(dest1 != dest2 && diff[dest1][dest2])
-						{
-							diff[j][i] = true;
-							changed = true;
-							break;
-						}
-					}
-				}
+				table[state * numSymbols + symbols.get(s)] = startDFA.getTransition(s, state).getDestinations()[0];
 			}
 		}
 		
-		// Start building our new dfa representation.
-		Map<Integer, Set<Integer>> setMap = new HashMap<Integer, Set<Integer>>();
+		int[] blocks = DFAMinimizer.partition(numStates, numSymbols, table, labels);
 		
-		Map<Set<Integer>, Integer> stateMap = new HashMap<Set<Integer>, Integer>();
-		Map<Set<Integer>, Map<String, Set<Integer>>> transMap = new HashMap<Set<Integer>, Map<String, Set<Integer>>>();
-		
-		// Find out what the aggregations our states are in are.
-		for(int j = diff.length - 1; j >= 0; j--)
+		// The language is empty, all that is left is the start state.
+		if(blocks[startDFA.getStartState()] == CompiledDFA.DEAD_STATE)
 		{
-			if(setMap.containsKey(j))
-				continue;
-			
-			Set<Integer> stateSet = new HashSet<Integer>();
-			stateSet.add(j);
-			
-			for(int i = 0; i < diff[j].length; i++)
-			{
-				if(!diff[j][i])
-					stateSet.add(i);
-			}
-			
-			for(Integer state : stateSet)
-			{
-				setMap.put(state, stateSet);
-			}
+			retDFA.setStartState(retDFA.createState());
+			return retDFA;
 		}
 		
-		// Remove Dead States
-		Set<Integer> deadStates = new HashSet<Integer>();
-		for(Map.Entry<Integer, Set<Integer>> stateSet : setMap.entrySet())
+		// One new state per block.
+		int numBlocks = 0;
+		for(int block : blocks)
+			numBlocks = Math.max(numBlocks, block + 1);
+		
+		Integer[] newStates = new Integer[numBlocks];
+		for(int block = 0; block < numBlocks; block++)
+			newStates[block] = retDFA.createState();
+		
+		// Copy the goals and transitions of one member of each block.
+		boolean[] done = new boolean[numBlocks];
+		for(int state = 0; state < numStates; state++)
 		{
-			Integer key = stateSet.getKey();
-			if(goalStates.contains(key))
+			int block = blocks[state];
+			if(block == CompiledDFA.DEAD_STATE || done[block])
 				continue;
+			done[block] = true;
 			
-			boolean dead = true;
-			for(String s : startDFA.getTransitionValues(key))
-			{
-				Integer dest = startDFA.getTransition(s, key).getDestinations()[0];
-				if(!setMap.get(dest).equals(stateSet.getValue()))
-				{
-					dead = false;
-					break;
-				}
-			}
+			if(goalStates.contains(state))
+				retDFA.setGoalState(newStates[block], startDFA.getGoalLabel(state));
 			
-			if(dead)
+			for(String s : startDFA.getTransitionValues(state))
 			{
-				deadStates.add(key);
+				int dest = blocks[startDFA.getTransition(s, state).getDestinations()[0]];
+				if(dest != CompiledDFA.DEAD_STATE)
+					retDFA.addTransition(new Transition<String, Integer>(s, newStates[block], new Integer[]{newStates[dest]}));
 			}
 		}
 		
+		retDFA.setStartState(newStates[blocks[startDFA.getStartState()]]);
 		
-		// Add all of the appropriate states and create the transition map.
-		for(Map.Entry<Integer , Set<Integer>> stateSet : setMap.entrySet())
-		{
-			if(!stateMap.containsKey(stateSet.getValue()))
-			{
-				if(deadStates.contains(stateSet.getKey()))
-				{
-					stateMap.put(stateSet.getValue(), null);
-				}
-				else
-				{
-					stateMap.put(stateSet.getValue(), retDFA.createState());
-					HashMap<String, Set<Integer>> currTrans = new HashMap<String, Set<Integer>>();
-					
-					for(String s : startDFA.getTransitionValues(stateSet.getKey()))
-					{
-						Integer dest = startDFA.getTransition(s, stateSet.getKey()).getDestinations()[0];
-						if(!deadStates.contains(dest))
-							currTrans.put(s, setMap.get(dest));
-					}
-					
-					if(goalStates.contains(stateSet.getKey()))
-						retDFA.setGoalState(stateMap.get(stateSet.getValue()), startDFA.getGoalLabel(stateSet.getKey()));
-					
-					if(startDFA.getStartState() == stateSet.getKey())
-						retDFA.setStartState(stateMap.get(stateSet.getValue()));
-					
-					transMap.put(stateSet.getValue(), currTrans);
-				}
-			}
-		}
-		
-		// Actually add the transitions.
-		for(Map.Entry<Set<Integer>, Map<String, Set<Integer>>> state : transMap.entrySet())
-		{
-			Integer stateNumber = stateMap.get(state.getKey());
-			for(Map.Entry<String, Set<Integer>> transition : state.getValue().entrySet())
-			{
-				Transition<String, Integer> trans = new Transition<String, Integer>(transition.getKey(), stateNumber, new Integer[]{stateMap.get(transition.getValue())});
-				retDFA.addTransition(trans);
-			}
-		}
-		
-		// Now we must construct our new DFA from our old DFA and correctly merge states.
 		return retDFA;
 	}
 	
@@ -262,10 +180,13 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 		Map<Set<Integer>, Integer> stateMap = new HashMap<Set<Integer>, Integer>();
 		Map<Set<Integer>, Map<String, Set<Integer>>> transMap = new HashMap<Set<Integer>, Map<String, Set<Integer>>>();
 		
+		// The epsilon closure of every single state, computed once.
+		Map<Integer, Set<Integer>> closures = epsilonClosures(nfa);
+		
 		// Our aggregated states.
 		Set<Integer> currStates = new HashSet<Integer>(), newStates;
 		currStates.add(nfa.getStartState());
-		currStates = epsilonClosure(nfa, currStates);
+		currStates = epsilonClosure(closures, currStates);
 		
 		// Current transitions.
 		Set<String> currTrans;
@@ -311,7 +232,7 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 					}
 					
 					// Get the epsilon closure of the new successor, add the transition to the current state's transitions.
-					newStates = epsilonClosure(nfa, newStates);
+					newStates = epsilonClosure(closures, newStates);
 					transMap.get(currStates).put(transVal, newStates);
 					
 					// If we have not already explored the node, add it to the open list.
@@ -335,7 +256,7 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 		// Set our start state.
 		newStates = new HashSet<Integer>();
 		newStates.add(nfa.getStartState());
-		newStates = epsilonClosure(nfa, newStates);
+		newStates = epsilonClosure(closures, newStates);
 		retDFA.setStartState(stateMap.get(newStates));
 		
 		// Set our goal states.
@@ -381,6 +302,25 @@ public class DFA extends TableDrivenFiniteAutomaton<String>
 	//
 	// PRIVATE METHODS
 	//
+	private static Map<Integer, Set<Integer>> epsilonClosures(TableDrivenFiniteAutomaton<String> fa)
+	{
+		Map<Integer, Set<Integer>> closures = new HashMap<Integer, Set<Integer>>();
+		for(Integer state : fa.getStates())
+			closures.put(state, epsilonClosure(fa, Collections.singleton(state)));
+		
+		return closures;
+	}
+	
+	private static Set<Integer> epsilonClosure(Map<Integer, Set<Integer>> closures, Set<Integer> states)
+	{
+		// The closure of a union is the union of the closures.
+		Set<Integer> retSet = new HashSet<Integer>();
+		for(Integer state : states)
+			retSet.addAll(closures.get(state));
+		
+		return retSet;
+	}
+	
 	private static Set<Integer> epsilonClosure(TableDrivenFiniteAutomaton<String> fa, Set<Integer> states)
 	{
 		Set<Integer> interSet, newSet = new HashSet<Integer>(), retSet = new HashSet<Integer>();
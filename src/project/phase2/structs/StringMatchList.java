@@ -1,10 +1,51 @@
 package project.phase2.structs;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-public class StringMatchList extends ArrayList<StringMatchTuple> {
+import java.util.RandomAccess;
+
+/**
+ * A list of matches, in the order they were added.
+ *
+ * Matches are stored by column rather than as StringMatchTuple objects: the
+ * strings and file names are interned into per-list tables, and every match
+ * is one entry in each of five int arrays. get builds a new tuple from the
+ * columns each time, so changing a tuple taken out of a list does not change
+ * the list. The column accessors read a field without building a tuple.
+ *
+ * A hash table of row numbers over all five columns is kept next to the
+ * list, for deepContains, along with a count of matches per string, for
+ * contains. The set operations look matches up through them, so they take
+ * linear time. The table is built on first use and kept up to date while
+ * matches are appended; any other change drops it, to be built again when
+ * needed.
+ */
+public class StringMatchList extends AbstractList<StringMatchTuple> implements RandomAccess {
+
+    private static final int EMPTY = -1;
+
+    // Interned strings and file names, and the number of matches per string
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private int[] stringCounts = new int[4];
+    private final List<String> fileNames = new ArrayList<String>();
+    private final Map<String, Integer> fileIds = new HashMap<String, Integer>();
+
+    // One entry per match
+    private int size = 0;
+    private int[] stringColumn = new int[8];
+    private int[] fileColumn = new int[8];
+    private int[] lineColumn = new int[8];
+    private int[] startColumn = new int[8];
+    private int[] endColumn = new int[8];
+
+    // Open addressing table of row numbers, or null until needed. Built by
+    // lookups, which may run on several threads, so only published when full
+    private volatile int[] rowIndex = null;
 
     public StringMatchList() {
         // Default
@@ -37,20 +78,14 @@ public class StringMatchList extends ArrayList<StringMatchTuple> {
     public StringMatchList intersection(final StringMatchList b) {
         StringMatchList n = new StringMatchList();
 
-        for (StringMatchTuple string : this) {
-            if (b.contains(string)) {
-                if(!n.deepContains(string)) {
-                    n.add(string);
+        for (int row = 0; row < size; row++) {
+            if (b.containsString(getString(row))) {
+                if (!n.containsRow(this, row)) {
+                    n.addRow(this, row);
                 }
             }
         }
 
-        for (StringMatchTuple string : b) {
-            if (n.contains(b) && !n.deepContains(string)) {
-                n.add(string);
-            }
-        }
-
         return n;
     }
 
@@ -63,9 +98,9 @@ public class StringMatchList extends ArrayList<StringMatchTuple> {
     public StringMatchList difference(final StringMatchList second) {
         StringMatchList n = new StringMatchList();
 
-        for (StringMatchTuple string : this) {
-            if (!second.deepContains(string)) {
-                n.add(string);
+        for (int row = 0; row < size; row++) {
+            if (!second.containsRow(this, row)) {
+                n.addRow(this, row);
             }
         }
 
@@ -78,18 +113,265 @@ public class StringMatchList extends ArrayList<StringMatchTuple> {
     }
 
     public void add(StringMatchList s) {
-        for (StringMatchTuple r : s) {
-            if (!deepContains(r))
-                add(new StringMatchTuple(r));
+        for (int row = 0; row < s.size; row++) {
+            if (!containsRow(s, row))
+                addRow(s, row);
+        }
+    }
+
+    /**
+     * Append a match without building a tuple for it.
+     */
+    public void add(final String string, final String fileName, final int line, final int startIndex,
+                    final int endIndex) {
+        int row = size;
+        ensureCapacity(size + 1);
+        int stringId = intern(string, strings, stringIds);
+        if (stringId == stringCounts.length) {
+            stringCounts = Arrays.copyOf(stringCounts, stringCounts.length * 2);
+        }
+        stringCounts[stringId]++;
+        stringColumn[row] = stringId;
+        fileColumn[row] = intern(fileName, fileNames, fileIds);
+        lineColumn[row] = line;
+        startColumn[row] = startIndex;
+        endColumn[row] = endIndex;
+        size++;
+        modCount++;
+
+        int[] table = rowIndex;
+        if (table != null) {
+            if (size * 2 > table.length) {
+                rowIndex = null;
+            } else {
+                insert(table, row);
+            }
+        }
+    }
+
+    private void addRow(final StringMatchList from, final int row) {
+        add(from.getString(row), from.getFileName(row), from.lineColumn[row], from.startColumn[row],
+                from.endColumn[row]);
+    }
+
+    @Override
+    public boolean add(final StringMatchTuple t) {
+        add(t.string, t.fileName, t.line, t.startIndex, t.endIndex);
+        return true;
+    }
+
+    @Override
+    public void add(final int index, final StringMatchTuple t) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        add(t);
+        if (index < size - 1) {
+            // Rotate the new last row into place
+            rotate(size - 1, index);
+            rowIndex = null;
+        }
+    }
+
+    @Override
+    public StringMatchTuple get(final int index) {
+        checkIndex(index);
+        StringMatchTuple t = new StringMatchTuple(getString(index));
+        t.fileName = getFileName(index);
+        t.line = lineColumn[index];
+        t.startIndex = startColumn[index];
+        t.endIndex = endColumn[index];
+        return t;
+    }
+
+    @Override
+    public StringMatchTuple set(final int index, final StringMatchTuple t) {
+        StringMatchTuple old = get(index);
+        stringCounts[stringColumn[index]]--;
+        int stringId = intern(t.string, strings, stringIds);
+        if (stringId == stringCounts.length) {
+            stringCounts = Arrays.copyOf(stringCounts, stringCounts.length * 2);
         }
+        stringCounts[stringId]++;
+        stringColumn[index] = stringId;
+        fileColumn[index] = intern(t.fileName, fileNames, fileIds);
+        lineColumn[index] = t.line;
+        startColumn[index] = t.startIndex;
+        endColumn[index] = t.endIndex;
+        rowIndex = null;
+        return old;
+    }
+
+    @Override
+    public StringMatchTuple remove(final int index) {
+        StringMatchTuple old = get(index);
+        stringCounts[stringColumn[index]]--;
+        rotate(index, size - 1);
+        size--;
+        modCount++;
+        rowIndex = null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(stringCounts, 0);
+        size = 0;
+        modCount++;
+        rowIndex = null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public String getString(final int index) {
+        checkIndex(index);
+        return strings.get(stringColumn[index]);
+    }
+
+    public String getFileName(final int index) {
+        checkIndex(index);
+        return fileNames.get(fileColumn[index]);
+    }
+
+    public int getLine(final int index) {
+        checkIndex(index);
+        return lineColumn[index];
+    }
+
+    public int getStartIndex(final int index) {
+        checkIndex(index);
+        return startColumn[index];
+    }
+
+    public int getEndIndex(final int index) {
+        checkIndex(index);
+        return endColumn[index];
     }
 
     public boolean deepContains(final StringMatchTuple t) {
-        for (StringMatchTuple a: this) {
-            if (a.hardEquals(t))
-                return true;
+        return findRow(t.string, t.fileName, t.line, t.startIndex, t.endIndex) != EMPTY;
+    }
+
+    private boolean containsRow(final StringMatchList from, final int row) {
+        return findRow(from.getString(row), from.getFileName(row), from.lineColumn[row], from.startColumn[row],
+                from.endColumn[row]) != EMPTY;
+    }
+
+    /**
+     * Check for a match of the same string, like StringMatchTuple.equals.
+     */
+    @Override
+    public boolean contains(final Object o) {
+        if (o instanceof StringMatchTuple) {
+            return containsString(((StringMatchTuple) o).string);
+        }
+        return super.contains(o);
+    }
+
+    private boolean containsString(final String string) {
+        Integer id = stringIds.get(string);
+        return id != null && stringCounts[id] > 0;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > stringColumn.length) {
+            int length = Math.max(capacity, stringColumn.length * 2);
+            stringColumn = Arrays.copyOf(stringColumn, length);
+            fileColumn = Arrays.copyOf(fileColumn, length);
+            lineColumn = Arrays.copyOf(lineColumn, length);
+            startColumn = Arrays.copyOf(startColumn, length);
+            endColumn = Arrays.copyOf(endColumn, length);
+        }
+    }
+
+    /**
+     * Move the row at from to position to, shifting the rows in between.
+     */
+    private void rotate(final int from, final int to) {
+        for (int[] column : new int[][]{stringColumn, fileColumn, lineColumn, startColumn, endColumn}) {
+            int value = column[from];
+            if (from > to) {
+                System.arraycopy(column, to, column, to + 1, from - to);
+            } else {
+                System.arraycopy(column, from + 1, column, from, to - from);
+            }
+            column[to] = value;
+        }
+    }
+
+    private static int intern(final String s, final List<String> table, final Map<String, Integer> ids) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = table.size();
+            table.add(s);
+            ids.put(s, id);
         }
-        return false;
+        return id;
+    }
+
+    private int findRow(final String string, final String fileName, final int line, final int startIndex,
+                        final int endIndex) {
+        Integer stringId = stringIds.get(string);
+        Integer fileId = fileIds.get(fileName);
+        if (stringId == null || fileId == null || size == 0) {
+            return EMPTY;
+        }
+
+        int[] table = index();
+        int mask = table.length - 1;
+        for (int slot = hash(stringId, fileId, line, startIndex, endIndex) & mask; ; slot = (slot + 1) & mask) {
+            int row = table[slot];
+            if (row == EMPTY) {
+                return EMPTY;
+            }
+            if (stringColumn[row] == stringId && fileColumn[row] == fileId && lineColumn[row] == line
+                    && startColumn[row] == startIndex && endColumn[row] == endIndex) {
+                return row;
+            }
+        }
+    }
+
+    private int[] index() {
+        int[] table = rowIndex;
+        if (table == null) {
+            // Threads racing here build equal tables, and any one of them may win
+            table = new int[Math.max(16, Integer.highestOneBit(Math.max(size, 1) * 4 - 1))];
+            Arrays.fill(table, EMPTY);
+            for (int row = 0; row < size; row++) {
+                insert(table, row);
+            }
+            rowIndex = table;
+        }
+        return table;
+    }
+
+    private void insert(final int[] table, final int row) {
+        int mask = table.length - 1;
+        int slot = hash(stringColumn[row], fileColumn[row], lineColumn[row], startColumn[row], endColumn[row]) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row;
+    }
+
+    private static int hash(final int stringId, final int fileId, final int line, final int startIndex,
+                            final int endIndex) {
+        int h = stringId;
+        h = 31 * h + fileId;
+        h = 31 * h + line;
+        h = 31 * h + startIndex;
+        h = 31 * h + endIndex;
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
     /**
@@ -105,15 +387,10 @@ public class StringMatchList extends ArrayList<StringMatchTuple> {
 
         HashMap<String, Integer> m = new HashMap<String, Integer>();
 
-        for (StringMatchTuple t : this) {
-
-            String a = t.string;
-
-            if (!m.containsKey(a)) {
-                m.put(a, 0);
+        for (int id = 0; id < strings.size(); id++) {
+            if (stringCounts[id] > 0) {
+                m.put(strings.get(id), stringCounts[id]);
             }
-
-            m.put(a, m.get(a) + 1);
         }
 
         String best = null;
@@ -139,18 +416,30 @@ public class StringMatchList extends ArrayList<StringMatchTuple> {
 
         StringMatchList a = (StringMatchList) o;
 
-        for (StringMatchTuple t : this) {
-            if (!a.contains(t))
+        for (int id = 0; id < strings.size(); id++) {
+            if (stringCounts[id] > 0 && !a.containsString(strings.get(id)))
                 return false;
         }
-        for (StringMatchTuple t : a) {
-            if (!this.contains(t))
+        for (int id = 0; id < a.strings.size(); id++) {
+            if (a.stringCounts[id] > 0 && !this.containsString(a.strings.get(id)))
                 return false;
         }
 
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        // Consistent with equals, which compares the sets of strings
+        int h = 0;
+        for (int id = 0; id < strings.size(); id++) {
+            if (stringCounts[id] > 0 && strings.get(id) != null) {
+                h += strings.get(id).hashCode();
+            }
+        }
+        return h;
+    }
+
     @Override
     public String toString() {
         StringBuffer be = new StringBuffer();
@@ -5,6 +5,7 @@ import project.phase2.file.StringMatchOperations;
 
 import java.io.File;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -37,4 +38,60 @@ public class StringMatchListTest {
 
         assertTrue(a.getMostFrequentString().equals("1"));
     }
+
+    @Test
+    public void largeSetActionsTest() {
+        StringMatchList a = new StringMatchList();
+        StringMatchList b = new StringMatchList();
+        for (int i = 0; i < 100000; i++) {
+            a.add(tuple("x", i));
+            b.add(tuple(i % 2 == 0 ? "x" : "y", i + 50000));
+        }
+
+        // x at 50000..149999 even; y at the odd ones
+        assertEquals(175000, a.union(b).size());
+        assertEquals(75000, a.difference(b).size());
+        // Every match in a has the string x, which b also has
+        assertEquals(100000, a.intersection(b).size());
+        assertEquals(0, a.intersection(new StringMatchList("y")).size());
+
+        StringMatchList c = new StringMatchList(a);
+        c.remove(0);
+        assertFalse(c.deepContains(tuple("x", 0)));
+        assertTrue(c.deepContains(tuple("x", 1)));
+        c.set(0, tuple("z", 1));
+        assertFalse(c.deepContains(tuple("x", 1)));
+        assertTrue(c.contains(new StringMatchTuple("z")));
+    }
+
+    @Test
+    public void columnStorageTest() {
+        StringMatchList a = new StringMatchList();
+        for (int i = 0; i < 5; i++) {
+            a.add(tuple("s" + i % 2, i));
+        }
+        a.add(2, tuple("new", 9));
+        a.remove(4);
+
+        // s0@0, s1@1, new@9, s0@2, s0@4
+        assertEquals(5, a.size());
+        assertTrue(a.get(2).hardEquals(tuple("new", 9)));
+        assertTrue(a.get(3).hardEquals(tuple("s0", 2)));
+        assertTrue(a.get(4).hardEquals(tuple("s0", 4)));
+        assertEquals("s0", a.getMostFrequentString());
+        assertFalse(a.deepContains(tuple("s1", 3)));
+
+        // Tuples taken out of the list are copies
+        a.get(0).line = 7;
+        assertEquals(1, a.getLine(0));
+    }
+
+    private static StringMatchTuple tuple(final String string, final int start) {
+        StringMatchTuple t = new StringMatchTuple(string);
+        t.fileName = "file.txt";
+        t.line = 1;
+        t.startIndex = start;
+        t.endIndex = start + 1;
+        return t;
+    }
 }
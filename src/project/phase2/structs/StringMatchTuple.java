@@ -50,6 +50,12 @@ public class StringMatchTuple {
         return this.string.equals(t.string);
     }
 
+    @Override
+    public int hashCode() {
+        // Consistent with equals, which only compares the string
+        return string == null ? 0 : string.hashCode();
+    }
+
     public boolean hardEquals(StringMatchTuple t) {
         return this.string.equals(t.string)
                 && this.fileName.equals(t.fileName)
@@ -0,0 +1,168 @@
+package project.scangen;
+
+import project.nfa.CompiledDFA;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Keeps compiled scanner DFAs in a directory, so a spec is only compiled the
+ * first time it is seen.
+ *
+ * Each DFA is stored in a file named after the SHA-256 hash of its spec and
+ * of GENERATOR_VERSION, which starts with the hash itself followed by
+ * CompiledDFA.writeTo. Files
+ * are read through a memory mapping. The cache is best effort: a file that is
+ * missing, unreadable or does not hold the expected hash is a miss, and a
+ * failure to store is ignored.
+ */
+public class DFACache {
+
+    /**
+     * System property naming the directory of the default cache; empty turns
+     * the default cache off.
+     */
+    public static final String DIRECTORY_PROPERTY = "scangen.cache.dir";
+
+    private static final String SUFFIX = ".dfa";
+
+    // Change whenever the DFA built from a spec changes, so that the files of
+    // an older generator are not used
+    private static final int GENERATOR_VERSION = 2;
+
+    private final File directory;
+
+    public DFACache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache in the directory named by DIRECTORY_PROPERTY, or by
+     *         default .cache/scangen in the user's home, where no other user
+     *         can plant files; null if the property is empty.
+     */
+    public static DFACache defaultCache() {
+        String path = System.getProperty(DIRECTORY_PROPERTY);
+        if (path == null) {
+            path = new File(new File(System.getProperty("user.home"), ".cache"), "scangen").getPath();
+        }
+        return path.length() == 0 ? null : new DFACache(new File(path));
+    }
+
+    /**
+     * @return the SHA-256 hash of the generator version and a spec.
+     */
+    public static byte[] hash(final byte[] spec) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(4).putInt(GENERATOR_VERSION).array());
+            return digest.digest(spec);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param spec the bytes of the spec.
+     * @return the cached dfa for the spec, or null if there is none.
+     */
+    public CompiledDFA load(final byte[] spec) {
+        byte[] hash = hash(spec);
+        File file = file(hash);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return read(buffer, hash);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the dfa in the buffer, or null if the buffer does not start
+     *         with hash or holds no valid dfa.
+     */
+    static CompiledDFA read(final ByteBuffer buffer, final byte[] hash) {
+        if (buffer.remaining() < hash.length) {
+            return null;
+        }
+        byte[] stored = new byte[hash.length];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, hash)) {
+            return null;
+        }
+        try {
+            return CompiledDFA.read(buffer);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store the dfa compiled from a spec. The file is written aside and moved
+     * in place, so other processes never read a partial file.
+     *
+     * @param spec the bytes of the spec.
+     * @param dfa  the dfa compiled from it.
+     */
+    public void store(final byte[] spec, final CompiledDFA dfa) {
+        byte[] hash = hash(spec);
+        File temp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            temp = File.createTempFile("dfa", ".tmp", directory);
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(hash);
+                dfa.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(temp.toPath(), file(hash).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file(hash).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            // Only the next run is slower
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private File file(final byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b & 0xff));
+        }
+        return new File(directory, name.append(SUFFIX).toString());
+    }
+}
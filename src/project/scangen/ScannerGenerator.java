@@ -1,5 +1,7 @@
 package project.scangen;
 
+import project.nfa.CompiledDFA;
+import project.nfa.JavaSourceWriter;
 import project.nfa.NFA;
 import project.scangen.nfa.NFABuilder;
 import project.nfa.NFAUtil;
@@ -9,32 +11,104 @@ import project.scangen.spec.SpecReader;
 import project.scangen.tokenizer.Token;
 import project.scangen.tokenizer.Tokenizer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class ScannerGenerator {
     final InputStream specFileInputStream;
     final InputStream programFileInputStream;
+    final DFACache cache;
 
     public ScannerGenerator(InputStream specFileInputStream, InputStream programFileInputStream) {
+        this(specFileInputStream, programFileInputStream, null);
+    }
+
+    /**
+     * @param cache where compiled DFAs are kept between runs, or null to
+     *              always compile the spec.
+     */
+    public ScannerGenerator(InputStream specFileInputStream, InputStream programFileInputStream,
+                            DFACache cache) {
         this.specFileInputStream = specFileInputStream;
         this.programFileInputStream = programFileInputStream;
+        this.cache = cache;
     }
 
     public Tokenizer generateTokenizer() {
-        SpecReader specReader = new SpecReader(this.specFileInputStream);
+        return new Tokenizer(generateDFA(), programFileInputStream);
+    }
+
+    /**
+     * Write the source of a Java class holding the scanner tables of the spec,
+     * for a program to tokenize with, without reading the spec. See
+     * JavaSourceWriter.
+     *
+     * @param qualifiedClassName the name of the class, with its package.
+     * @param comment            the class comment.
+     * @param out                where to write the source; not closed.
+     */
+    public void generateSource(String qualifiedClassName, String comment, Writer out) throws IOException {
+        int dot = qualifiedClassName.lastIndexOf('.');
+        String packageName = dot < 0 ? "" : qualifiedClassName.substring(0, dot);
+        String className = qualifiedClassName.substring(dot + 1);
+        JavaSourceWriter.write(generateDFA(), packageName, className, comment, out);
+    }
+
+    /**
+     * @return the minimal dfa of the spec, from the cache if there is one.
+     */
+    public CompiledDFA generateDFA() {
+        if (cache == null) {
+            return compile(specFileInputStream);
+        }
+
+        byte[] specBytes = readSpec();
+        CompiledDFA dfa = cache.load(specBytes);
+        if (dfa == null) {
+            dfa = compile(new ByteArrayInputStream(specBytes));
+            cache.store(specBytes, dfa);
+        }
+        return dfa;
+    }
+
+    private static CompiledDFA compile(InputStream specInputStream) {
+        SpecReader specReader = new SpecReader(specInputStream);
         Spec spec = specReader.specify();
 
         NFASegment nfa = NFABuilder.buildNFAFromSpec(spec);
         NFA dfa = NFAUtil.convertToDFA(new NFA(nfa.start));
 
-        return new Tokenizer(dfa, programFileInputStream);
+        return CompiledDFA.compile(dfa).minimize();
+    }
+
+    private byte[] readSpec() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try {
+            int read;
+            while ((read = specFileInputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
     }
 
     public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("-java")) {
+            generateSource(args[1], args[2]);
+            return;
+        }
         if (args.length != 2) {
             System.err.println("Parameters: <spec-file> <program-file>");
+            System.err.println("        or: -java <spec-file> <class-name>");
             System.exit(1);
         }
 
@@ -46,7 +120,8 @@ public class ScannerGenerator {
         try {
             InputStream specFileInputStream = new FileInputStream(specFilePath);
             InputStream programFileInputStream = new FileInputStream(programFilePath);
-            scannerGenerator = new ScannerGenerator(specFileInputStream, programFileInputStream);
+            scannerGenerator = new ScannerGenerator(specFileInputStream, programFileInputStream,
+                    DFACache.defaultCache());
         } catch (FileNotFoundException ex) {
             System.err.println(ex);
             System.exit(1);
@@ -58,4 +133,20 @@ public class ScannerGenerator {
             System.out.println(token);
         }
     }
+
+    /**
+     * Print the source of a scanner class for a spec file.
+     */
+    private static void generateSource(String specFilePath, String qualifiedClassName) {
+        try {
+            ScannerGenerator scannerGenerator = new ScannerGenerator(new FileInputStream(specFilePath), null,
+                    DFACache.defaultCache());
+            Writer out = new OutputStreamWriter(System.out);
+            scannerGenerator.generateSource(qualifiedClassName, "Scanner tables for " + specFilePath + ".", out);
+            out.flush();
+        } catch (IOException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package project.scangen.test;
+
+import org.junit.Test;
+import project.nfa.CompiledDFA;
+import project.scangen.DFACache;
+import project.scangen.ScannerGenerator;
+import project.scangen.tokenizer.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DFACacheTest {
+
+    private static final String SPEC = "$DIGIT [0-9]\n$LETTER [a-z]\n\n$INT ($DIGIT)+\n$ID ($LETTER)+";
+
+    @Test
+    public void storeAndLoadTest() throws IOException {
+        File directory = createDirectory();
+        try {
+            DFACache cache = new DFACache(directory);
+            assertNull(cache.load(SPEC.getBytes()));
+
+            // The first run compiles and stores, the second loads
+            assertEquals("INT 12\nID ab\n", tokenize(SPEC, "12 ab", cache));
+            File[] files = directory.listFiles();
+            assertEquals(1, files.length);
+            CompiledDFA dfa = cache.load(SPEC.getBytes());
+            assertNotNull(dfa);
+            assertEquals("INT", dfa.getTokenType(dfa.step(dfa.getStartState(), '7')));
+            assertEquals("ID cd\nINT 34\n", tokenize(SPEC, "cd 34", cache));
+
+            // Another spec is not mixed up with it
+            String other = "$DIGIT [0-9]\n\n$INT ($DIGIT)+";
+            assertNull(cache.load(other.getBytes()));
+            assertEquals("INT 56\n", tokenize(other, "56 ef", cache));
+            assertEquals(2, directory.listFiles().length);
+
+            // A damaged file is a miss, and is written again
+            RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+            raf.setLength(raf.length() / 2);
+            raf.close();
+            assertNull(cache.load(SPEC.getBytes()));
+            assertEquals("INT 12\nID ab\n", tokenize(SPEC, "12 ab", cache));
+            assertNotNull(cache.load(SPEC.getBytes()));
+
+            FileOutputStream out = new FileOutputStream(files[0]);
+            out.write("not a dfa".getBytes());
+            out.close();
+            assertNull(cache.load(SPEC.getBytes()));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static String tokenize(final String spec, final String input, final DFACache cache) {
+        ScannerGenerator scannerGenerator = new ScannerGenerator(new ByteArrayInputStream(spec.getBytes()),
+                new ByteArrayInputStream(input.getBytes()), cache);
+        StringBuilder sb = new StringBuilder();
+        for (Token token : scannerGenerator.generateTokenizer()) {
+            sb.append(token).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("dfacache", "");
+        directory.delete();
+        directory.mkdir();
+        return directory;
+    }
+
+    private static void delete(final File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,114 @@
+package project.scangen.tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A window over a character stream, kept in a circular array.
+ *
+ * Characters are addressed by their absolute index in the stream. Everything
+ * from the release point up to the furthest character read stays available;
+ * characters before the release point are dropped and their slots reused.
+ * The array only grows when more characters than it holds are needed at
+ * once, so memory is bounded by the longest lookahead rather than by the
+ * length of the input.
+ */
+public class CharRingBuffer {
+
+    /**
+     * Initial capacity, in characters.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final Reader reader;
+    private char[] buffer;
+    private int mask;
+    private long start = 0; //first character kept
+    private long end = 0; //one past the last character read
+    private boolean eof = false;
+
+    public CharRingBuffer(final Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param reader   stream to read from.
+     * @param capacity initial capacity, rounded up to a power of two.
+     */
+    public CharRingBuffer(final Reader reader, final int capacity) {
+        this.reader = reader;
+        this.buffer = new char[Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1)];
+        this.mask = buffer.length - 1;
+    }
+
+    /**
+     * Get a character, reading more of the stream if needed.
+     *
+     * @param index absolute index, not before the release point.
+     * @return the character, or -1 past the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    public int charAt(final long index) throws IOException {
+        while (index >= end) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return buffer[(int) (index & mask)];
+    }
+
+    /**
+     * Copy characters out of the buffer. They must already have been read.
+     *
+     * @param index  absolute index of the first character.
+     * @param length number of characters.
+     * @return the characters as a string.
+     */
+    public String substring(final long index, final int length) {
+        int from = (int) (index & mask);
+        int first = Math.min(length, buffer.length - from);
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(buffer, from, first);
+        sb.append(buffer, 0, length - first);
+        return sb.toString();
+    }
+
+    /**
+     * Drop every character before an index, so their slots can be reused.
+     *
+     * @param index absolute index of the first character still needed.
+     */
+    public void release(final long index) {
+        start = Math.max(start, Math.min(index, end));
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (end - start == buffer.length) {
+            grow();
+        }
+
+        // Read into the free run after end, up to the wrap point or the kept characters
+        int from = (int) (end & mask);
+        int length = (int) Math.min(buffer.length - from, buffer.length - (end - start));
+        int read = reader.read(buffer, from, length);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private void grow() {
+        char[] grown = new char[buffer.length * 2];
+        int newMask = grown.length - 1;
+        for (long i = start; i < end; i++) {
+            grown[(int) (i & newMask)] = buffer[(int) (i & mask)];
+        }
+        buffer = grown;
+        mask = newMask;
+    }
+}
@@ -1,10 +1,8 @@
 package project.scangen.tokenizer;
 
+import project.nfa.CompiledDFA;
 import project.nfa.NFA;
-import project.nfa.State;
-import project.nfa.Transition;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -12,23 +10,48 @@ import java.util.Iterator;
 
 /**
  * Tokenizes an input stream. The token type is the name of the final state.
+ * The DFA is walked in its compiled form, one table lookup per character.
+ *
+ * Tokens are found by maximal munch: the DFA is walked once from the current
+ * position until it dies, and the token ends at the last accepting state
+ * seen. Characters that start no token are skipped.
+ *
+ * Input is streamed through a CharRingBuffer, so memory does not depend on
+ * the length of the input or of its lines. By default line terminators end
+ * tokens and are never given to the DFA, like reading line by line. With
+ * spanLines set they are ordinary characters, and a token may cover several
+ * lines.
  *
  * @author Kefu Zhou
  */
 public class Tokenizer implements Iterable<Token> {
-    private final BufferedReader reader;
-    private final NFA dfa;
-    private String curLine;
+    private final CharRingBuffer buffer;
+    private final CompiledDFA dfa;
+    private final boolean spanLines;
     private Token nextToken = null;
-    private int lineNumber = 0; //how many lines are read
+    private long position = 0; //index of the next character in the stream
+    private int lineNumber = 1;
     private int charNumber = 1;
+    private boolean afterCarriageReturn = false;
 
     public Tokenizer(final NFA dfa, final InputStream input) {
-        if (!dfa.isDFA())
-            throw new RuntimeException("Must be DFA");
+        this(CompiledDFA.compile(dfa), input);
+    }
 
+    public Tokenizer(final CompiledDFA dfa, final InputStream input) {
+        this(dfa, input, false);
+    }
+
+    /**
+     * @param dfa       the dfa recognizing the tokens.
+     * @param input     the stream to tokenize.
+     * @param spanLines true if line terminators are fed to the dfa, so that
+     *                  tokens may span lines.
+     */
+    public Tokenizer(final CompiledDFA dfa, final InputStream input, final boolean spanLines) {
         this.dfa = dfa;
-        this.reader = new BufferedReader(new InputStreamReader(input));
+        this.buffer = new CharRingBuffer(new InputStreamReader(input));
+        this.spanLines = spanLines;
     }
 
     private class TokenIterator implements Iterator<Token> {
@@ -60,63 +83,87 @@ public class Tokenizer implements Iterable<Token> {
             return token;
         }
 
-        if (curLine == null || curLine.length() == 0) {
-            try {
-                curLine = reader.readLine();
-                // reset
-                lineNumber++;
-                charNumber = 1;
-            } catch (IOException ex) {
-                return null;
-            }
-
-            // If curLine is still null, no more input
-            if (curLine == null) {
-                return null;
+        try {
+            while (true) {
+                int c = buffer.charAt(position);
+                if (c < 0) {
+                    return null;
+                }
+
+                if (spanLines || !isLineTerminator(c)) {
+                    Token t = getLongestToken();
+                    if (t != null) {
+                        return t;
+                    }
+                }
+
+                // Nothing matches here, skip a character
+                consume(1);
             }
+        } catch (IOException ex) {
+            return null;
         }
+    }
 
-        Token t = null;
-
-        for (int max = curLine.length(); max > 0; max--) {
-            t = getNextToken(dfa.getStartState(), 0, max);
-            if (t != null) {
-            	charNumber += t.value.length();
-                curLine = curLine.substring(t.value.length());
+    /**
+     * Walk the DFA once from the current position, remembering the last
+     * accepting state, and consume the longest token found.
+     *
+     * @return the longest non-empty token at the position, or null if there
+     *         is none.
+     */
+    private Token getLongestToken() throws IOException {
+        int state = dfa.getStartState();
+        int acceptState = CompiledDFA.DEAD_STATE;
+        int acceptLength = 0;
+
+        for (long i = position; ; i++) {
+            int c = buffer.charAt(i);
+            if (c < 0 || (!spanLines && isLineTerminator(c))) {
+                break;
+            }
+            state = dfa.step(state, (char) c);
+            if (state == CompiledDFA.DEAD_STATE) {
                 break;
             }
+            if (dfa.isAccepting(state)) {
+                acceptState = state;
+                acceptLength = (int) (i + 1 - position);
+            }
         }
 
-        if (t == null && curLine.length() > 0) {
-        	charNumber++;
-            curLine = curLine.substring(1);
-            return getNextToken();
+        if (acceptState == CompiledDFA.DEAD_STATE) {
+            return null;
         }
 
+        Token t = new Token(dfa.getTokenType(acceptState), buffer.substring(position, acceptLength), lineNumber,
+                charNumber);
+        consume(acceptLength);
         return t;
     }
 
-    private Token getNextToken(State state, int min, int max) {
-        return getNextToken(state, min, max, new StringBuffer());
-    }
-
-    private Token getNextToken(State state, int min, int max, StringBuffer tokenBuffer) {
-        Token t = null;
-
-        for (Transition tr : state.getTransitions()) {
-            if (min == max) {
-                break;
-            }
-            String c = String.valueOf(curLine.charAt(min));
-            if (tr.isValid(c)) {
-                tokenBuffer.append(c);
-                return getNextToken(tr.getDestinationState(), min + 1, max, tokenBuffer);
+    /**
+     * Move past characters already read, updating the line and column.
+     * Line terminators are \n, \r and \r\n.
+     */
+    private void consume(final int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            char c = (char) buffer.charAt(position++);
+            if (c == '\n' && afterCarriageReturn) {
+                // second half of \r\n, the line was already counted
+                charNumber = 1;
+            } else if (isLineTerminator(c)) {
+                lineNumber++;
+                charNumber = 1;
+            } else {
+                charNumber++;
             }
+            afterCarriageReturn = c == '\r';
         }
+        buffer.release(position);
+    }
 
-        if (state.isFinal()) {
-            t = new Token(state.getName(), tokenBuffer.toString(), lineNumber, charNumber);
-        }
-        return t;
+    private static boolean isLineTerminator(final int c) {
+        return c == '\n' || c == '\r';
     }
 }
@@ -0,0 +1,46 @@
+package project.scangen.tokenizer.test;
+
+import org.junit.Test;
+import project.scangen.tokenizer.CharRingBuffer;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharRingBufferTest {
+
+    @Test
+    public void wrapAroundTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String s = sb.toString();
+        CharRingBuffer buffer = new CharRingBuffer(new StringReader(s), 16);
+
+        // Windows of 7 characters, released as we go, wrap around the array
+        for (int i = 0; i + 7 <= s.length(); i += 5) {
+            assertEquals(s.charAt(i + 6), buffer.charAt(i + 6));
+            assertEquals(s.substring(i, i + 7), buffer.substring(i, 7));
+            buffer.release(i + 5);
+        }
+        assertEquals(-1, buffer.charAt(s.length()));
+    }
+
+    @Test
+    public void growTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(i % 10);
+        }
+        String s = sb.toString();
+        CharRingBuffer buffer = new CharRingBuffer(new StringReader(s), 16);
+
+        buffer.charAt(3);
+        buffer.release(3);
+        // Looking 60 characters ahead of the release point needs a bigger array
+        assertEquals(s.charAt(63), buffer.charAt(63));
+        assertEquals(s.substring(3, 64), buffer.substring(3, 61));
+    }
+}
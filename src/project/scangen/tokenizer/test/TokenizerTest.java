@@ -1,5 +1,6 @@
 package project.scangen.tokenizer.test;
 
+import project.nfa.CompiledDFA;
 import project.nfa.NFA;
 import project.nfa.NFAUtil;
 import project.nfa.State;
@@ -13,6 +14,8 @@ import java.io.InputStream;
 import java.util.Iterator;
 
 import static project.nfa.NFAUtil.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TokenizerTest {
@@ -61,4 +64,71 @@ public class TokenizerTest {
             System.out.println(latest);
         } while (latest != null);
     }
+
+    @Test
+    public void MaximalMunchTest() {
+        // ab+c and ab
+        NFASegment abc = ab(ab(a("a"), aPlus(a("b"))), a("c"));
+        abc.end.addTransition(Transition.spawnGoal("ABC"));
+        NFASegment ab = ab(a("a"), a("b"));
+        ab.end.addTransition(Transition.spawnGoal("AB"));
+        NFA dfa = NFAUtil.convertToDFA(new NFA(aOrB(abc, ab)));
+
+        String s = "abbc ab abbbx\n\n  abc";
+        Tokenizer tokenizer = new Tokenizer(dfa, new ByteArrayInputStream(s.getBytes()));
+        Iterator<Token> tokenIterator = tokenizer.iterator();
+
+        assertToken("ABC", "abbc", 1, 1, tokenIterator.next());
+        assertToken("AB", "ab", 1, 6, tokenIterator.next());
+        // abbb never reaches c, so only the ab prefix is a token
+        assertToken("AB", "ab", 1, 9, tokenIterator.next());
+        assertToken("ABC", "abc", 3, 3, tokenIterator.next());
+        assertFalse(tokenIterator.hasNext());
+    }
+
+    @Test
+    public void LongLineTest() {
+        NFASegment ab = aPlus(ab(a("a"), a("b")));
+        ab.end.addTransition(Transition.spawnGoal("AB"));
+        NFA dfa = NFAUtil.convertToDFA(new NFA(ab));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 2 == 0 ? "abab " : "ab x");
+        }
+        Tokenizer tokenizer = new Tokenizer(dfa, new ByteArrayInputStream(sb.toString().getBytes()));
+        int count = 0;
+        for (Token t : tokenizer) {
+            count++;
+        }
+        assertEquals(20000, count);
+    }
+
+    @Test
+    public void SpanLinesTest() {
+        // a(\n|b)*c
+        NFASegment d = ab(ab(a("a"), aStar(aOrB(a("\n"), a("b")))), a("c"));
+        d.end.addTransition(Transition.spawnGoal("ABC"));
+        CompiledDFA dfa = CompiledDFA.compile(NFAUtil.convertToDFA(new NFA(d)));
+        String s = "ab\r\n ac ab\nb\nc\rac";
+
+        Iterator<Token> lines = new Tokenizer(dfa, new ByteArrayInputStream(s.getBytes())).iterator();
+        assertToken("ABC", "ac", 2, 2, lines.next());
+        assertToken("ABC", "ac", 5, 1, lines.next());
+        assertFalse(lines.hasNext());
+
+        Iterator<Token> spanning = new Tokenizer(dfa, new ByteArrayInputStream(s.getBytes()), true).iterator();
+        assertToken("ABC", "ac", 2, 2, spanning.next());
+        assertToken("ABC", "ab\nb\nc", 2, 5, spanning.next());
+        assertToken("ABC", "ac", 5, 1, spanning.next());
+        assertFalse(spanning.hasNext());
+    }
+
+    private static void assertToken(final String type, final String value, final int line, final int pos,
+                                    final Token token) {
+        assertEquals(type, token.type);
+        assertEquals(value, token.value);
+        assertEquals(line, token.line);
+        assertEquals(pos, token.pos);
+    }
 }